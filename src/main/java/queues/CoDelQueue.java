@@ -0,0 +1,366 @@
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * This class implements a first-in-first-out (FIFO) queue with CoDel
+ * (controlled delay) active queue management. Each item is timestamped on
+ * <em>enqueue</em> and its sojourn time, the time it spent queued, is
+ * measured on <em>poll</em>. While every sojourn time stays above
+ * {@code target} for at least {@code interval}, the queue is considered to
+ * hold a standing backlog and drops items from the head, at a rate that
+ * grows with the square root of the number of drops until the sojourn time
+ * falls below target again. This keeps queueing delay near target under
+ * overload instead of letting it grow without bound.
+ * </p>
+ * <p/>
+ * <p>
+ * Dropped items, and items rejected because the optional hard capacity is
+ * reached, are passed to a {@link DropHandler}. The sojourn time of every
+ * delivered item is recorded in a {@link LatencyHistogram} available from
+ * {@link #sojournTimes()}. Like {@link Queue}, instances are not
+ * thread-safe.
+ * </p>
+ * <p/>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null item.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class CoDelQueue<T> {
+
+    /**
+     * Receives items that the queue discards.
+     *
+     * @param <T> - generic item type
+     */
+    public interface DropHandler<T> {
+
+        /**
+         * Called for each discarded item.
+         *
+         * @param item    - the discarded item
+         * @param sojourn - nanoseconds the item was queued; 0 if rejected on
+         *                enqueue
+         */
+        void dropped(T item, long sojourn);
+    }
+
+    /**
+     * Default sojourn time the queue tries to stay below: 5 ms.
+     */
+    public static final long DEFAULT_TARGET = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * Default time sojourn must stay above target before dropping: 100 ms.
+     */
+    public static final long DEFAULT_INTERVAL =
+        TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Handler that ignores discarded items.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DropHandler IGNORE = new DropHandler() {
+        public void dropped(final Object item, final long sojourn) {
+        }
+    };
+
+    /**
+     * The queued items.
+     */
+    private final Queue<T> items = new Queue<T>(64);
+
+    /**
+     * Enqueue times in nanoseconds, in step with items.
+     */
+    private final LongRing times = new LongRing();
+
+    /**
+     * Sojourn time to stay below, in nanoseconds.
+     */
+    private final long target;
+
+    /**
+     * Time above target before dropping starts, in nanoseconds.
+     */
+    private final long interval;
+
+    /**
+     * Maximum number of queued items; further enqueues are rejected.
+     */
+    private final int capacity;
+
+    /**
+     * Receives dropped and rejected items.
+     */
+    private final DropHandler<? super T> handler;
+
+    /**
+     * Sojourn times of delivered items.
+     */
+    private final LatencyHistogram sojournTimes = new LatencyHistogram();
+
+    /**
+     * Time at which sojourn will have been above target for an interval;
+     * 0 while it is below target.
+     */
+    private long firstAboveTime;
+
+    /**
+     * Time of the next drop while in the dropping state.
+     */
+    private long dropNext;
+
+    /**
+     * Drops in the current dropping state.
+     */
+    private int dropCount;
+
+    /**
+     * dropCount when the previous dropping state ended.
+     */
+    private int lastDropCount;
+
+    /**
+     * Is the queue in the dropping state?
+     */
+    private boolean dropping;
+
+    /**
+     * Total number of dropped items.
+     */
+    private long drops;
+
+    /**
+     * Total number of rejected items.
+     */
+    private long rejects;
+
+    /**
+     * Construct an unbounded queue with the default target and interval
+     * that silently discards dropped items.
+     */
+    @SuppressWarnings("unchecked")
+    public CoDelQueue() {
+        this(DEFAULT_TARGET, DEFAULT_INTERVAL, Integer.MAX_VALUE, IGNORE);
+    }
+
+    /**
+     * Construct a queue.
+     *
+     * @param t - sojourn time to stay below, in nanoseconds
+     * @param i - time above target before dropping, in nanoseconds
+     * @param c - hard capacity; enqueues beyond it are rejected
+     * @param h - receives dropped and rejected items
+     */
+    public CoDelQueue(final long t, final long i, final int c,
+                      final DropHandler<? super T> h) {
+        if (t <= 0 || i <= 0 || c < 1) {
+            throw new IllegalArgumentException(
+                "target, interval and capacity must be positive");
+        }
+        if (h == null) {
+            throw new NullPointerException();
+        }
+        target = t;
+        interval = i;
+        capacity = c;
+        handler = h;
+    }
+
+    /**
+     * Add an item, stamped with the current time.
+     *
+     * @param item - the item
+     * @return - true if queued, false if rejected because the queue is full
+     */
+    public final boolean enqueue(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (items.size() >= capacity) {
+            rejects++;
+            handler.dropped(item, 0);
+            return false;
+        }
+        times.addLast(now());
+        items.enqueue(item);
+        return true;
+    }
+
+    /**
+     * Remove and return the oldest item that survives the CoDel policy.
+     *
+     * @return - the next item, or null if the queue is or becomes empty
+     */
+    public final T poll() {
+        final long now = now();
+        if (items.isEmpty()) {
+            dropping = false;
+            firstAboveTime = 0;
+            return null;
+        }
+        long sojourn = now - times.peekFirst();
+        T item = take();
+        boolean okToDrop = aboveTarget(sojourn, now);
+        if (dropping) {
+            if (!okToDrop) {
+                dropping = false;
+            } else {
+                while (now >= dropNext && dropping) {
+                    drop(item, sojourn);
+                    dropCount++;
+                    if (items.isEmpty()) {
+                        dropping = false;
+                        firstAboveTime = 0;
+                        return null;
+                    }
+                    sojourn = now - times.peekFirst();
+                    item = take();
+                    if (!aboveTarget(sojourn, now)) {
+                        dropping = false;
+                    } else {
+                        dropNext = controlLaw(dropNext, dropCount);
+                    }
+                }
+            }
+        } else if (okToDrop) {
+            drop(item, sojourn);
+            if (items.isEmpty()) {
+                firstAboveTime = 0;
+                return null;
+            }
+            sojourn = now - times.peekFirst();
+            item = take();
+            aboveTarget(sojourn, now);
+            dropping = true;
+            // Resume near the previous drop rate if it ended recently.
+            final int delta = dropCount - lastDropCount;
+            dropCount = delta > 1 && now - dropNext < 16 * interval
+                ? delta : 1;
+            dropNext = controlLaw(now, dropCount);
+            lastDropCount = dropCount;
+        }
+        sojournTimes.record(sojourn);
+        return item;
+    }
+
+    /**
+     * Update the above-target state for an item leaving the queue.
+     *
+     * @param sojourn - the item's sojourn time
+     * @param now     - current time
+     * @return - true if sojourn has been above target for an interval
+     */
+    private boolean aboveTarget(final long sojourn, final long now) {
+        // A queue that has just been emptied holds no standing backlog.
+        if (sojourn < target || items.isEmpty()) {
+            firstAboveTime = 0;
+            return false;
+        }
+        if (firstAboveTime == 0) {
+            firstAboveTime = now + interval;
+            return false;
+        }
+        return now >= firstAboveTime;
+    }
+
+    /**
+     * Time of the next drop: drops get closer together as the inverse
+     * square root of the number of drops.
+     *
+     * @param t     - time of the previous drop
+     * @param count - number of drops so far
+     * @return - time of the next drop
+     */
+    private long controlLaw(final long t, final int count) {
+        return t + (long) (interval / Math.sqrt(count));
+    }
+
+    /**
+     * Remove the head item and its timestamp.
+     *
+     * @return - the head item
+     */
+    private T take() {
+        times.removeFirst();
+        return items.dequeue();
+    }
+
+    /**
+     * Count and report a dropped item.
+     *
+     * @param item    - the item
+     * @param sojourn - its sojourn time
+     */
+    private void drop(final T item, final long sojourn) {
+        drops++;
+        handler.dropped(item, sojourn);
+    }
+
+    /**
+     * Current time in nanoseconds.
+     *
+     * @return - System.nanoTime()
+     */
+    private static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Is this queue empty?
+     *
+     * @return true if this queue is empty; false otherwise
+     */
+    public final boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Returns the number of queued items.
+     *
+     * @return the number of items in this queue
+     */
+    public final int size() {
+        return items.size();
+    }
+
+    /**
+     * Is the queue currently dropping items?
+     *
+     * @return true while in the CoDel dropping state
+     */
+    public final boolean isDropping() {
+        return dropping;
+    }
+
+    /**
+     * Total number of items dropped from the head.
+     *
+     * @return the number of dropped items
+     */
+    public final long drops() {
+        return drops;
+    }
+
+    /**
+     * Total number of items rejected because the queue was full.
+     *
+     * @return the number of rejected items
+     */
+    public final long rejects() {
+        return rejects;
+    }
+
+    /**
+     * Sojourn times of delivered items, in nanoseconds; use
+     * {@link LatencyHistogram#percentile(double)} for percentiles.
+     *
+     * @return the live histogram
+     */
+    public final LatencyHistogram sojournTimes() {
+        return sojournTimes;
+    }
+}
@@ -0,0 +1,388 @@
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * This class implements a first-in-first-out (FIFO) queue of keyed values
+ * that coalesces pending updates: enqueuing a value whose key is already in
+ * the queue replaces the pending value instead of adding a second entry. By
+ * default the entry keeps its original position; a queue built with
+ * {@code moveToTail} set moves it to the end instead, so that it waits
+ * behind every other key again.
+ * </p>
+ * <p/>
+ * <p>
+ * Entries form a doubly-linked list in FIFO order, and an open-addressing
+ * (linear probing) hash index maps each pending key to its entry. The
+ * <em>enqueue</em>, <em>dequeue</em>, <em>peek</em>, <em>contains</em>,
+ * <em>size</em> and <em>is-empty</em> operations take constant expected
+ * time. The index doubles when half full and halves when a quarter full,
+ * so a burst of distinct keys does not leave a peak-sized index behind.
+ * </p>
+ * <p/>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null key or
+ * value; throw a java.util.NoSuchElementException if the client attempts to
+ * peek at or dequeue from an empty queue.
+ * </p>
+ *
+ * @param <K> - key type; equal keys coalesce.
+ * @param <V> - value type.
+ */
+public class CoalescingQueue<K, V> implements Iterable<V> {
+
+    /**
+     * Initial capacity of the index; always a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Threshold for call to reduction strategy.
+     */
+    private static final int REDUCTION_THRESHOLD = 4;
+
+    /**
+     * Whether a coalesced entry moves to the tail.
+     */
+    private final boolean moveToTail;
+
+    /**
+     * Index slots; null for an empty slot.
+     */
+    private Entry<K, V>[] table;
+
+    /**
+     * Oldest entry.
+     */
+    private Entry<K, V> first;
+
+    /**
+     * Newest entry.
+     */
+    private Entry<K, V> last;
+
+    /**
+     * Number of pending keys.
+     */
+    private int size;
+
+    /**
+     * Construct an empty queue that keeps coalesced entries in place.
+     */
+    public CoalescingQueue() {
+        this(false);
+    }
+
+    /**
+     * Construct an empty queue.
+     *
+     * @param tail - true to move a coalesced entry to the tail, false to
+     *             keep its original position
+     */
+    @SuppressWarnings("unchecked")
+    public CoalescingQueue(final boolean tail) {
+        moveToTail = tail;
+        table = (Entry<K, V>[]) new Entry<?, ?>[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add a value for the key, or replace the value already pending for it.
+     *
+     * @param key   - identity of the update
+     * @param value - the update
+     * @return - true if the key was not pending, false if it was coalesced
+     */
+    public final boolean enqueue(final K key, final V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        final int mask = table.length - 1;
+        int i = hash(key) & mask;
+        Entry<K, V> e;
+        while ((e = table[i]) != null) {
+            if (e.key.equals(key)) {
+                e.value = value;
+                if (moveToTail && e != last) {
+                    unlink(e);
+                    link(e);
+                }
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        e = new Entry<K, V>(key, value);
+        table[i] = e;
+        link(e);
+        size++;
+        if (size * 2 > table.length) {
+            resize(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Remove and return the value of the oldest pending key.
+     *
+     * @return - the value least recently added, or moved, to the queue
+     */
+    public final V dequeue() {
+        if (isEmpty()) {
+            throw new NoSuchElementException(
+                "CoalescingQueue underflow");
+        }
+        final Entry<K, V> e = first;
+        unlink(e);
+        removeFromIndex(e);
+        size--;
+        if (table.length > INITIAL_CAPACITY
+            && size <= table.length / REDUCTION_THRESHOLD) {
+            resize(table.length / 2);
+        }
+        return e.value;
+    }
+
+    /**
+     * Return (but do not remove) the value of the oldest pending key.
+     *
+     * @return - the value at the head of the queue
+     */
+    public final V peek() {
+        if (isEmpty()) {
+            throw new NoSuchElementException(
+                "CoalescingQueue underflow");
+        }
+        return first.value;
+    }
+
+    /**
+     * Return the oldest pending key.
+     *
+     * @return - the key at the head of the queue
+     */
+    public final K peekKey() {
+        if (isEmpty()) {
+            throw new NoSuchElementException(
+                "CoalescingQueue underflow");
+        }
+        return first.key;
+    }
+
+    /**
+     * Is an update for the key pending?
+     *
+     * @param key - key to look up
+     * @return - true if the key is in the queue
+     */
+    public final boolean contains(final K key) {
+        final int mask = table.length - 1;
+        for (int i = hash(key) & mask; table[i] != null; i = (i + 1) & mask) {
+            if (table[i].key.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Is this queue empty?
+     *
+     * @return true if this queue is empty; false otherwise
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of pending keys.
+     *
+     * @return the number of entries in this queue
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Returns an iterator over the pending values in FIFO order.
+     *
+     * @return an iterator over the values in this queue
+     */
+    public final Iterator<V> iterator() {
+        return new CoalescingIterator();
+    }
+
+    /**
+     * Private class that walks the entries from oldest to newest.
+     */
+    private class CoalescingIterator implements Iterator<V> {
+
+        /**
+         * Entry whose value is returned next.
+         */
+        private Entry<K, V> current = first;
+
+        /**
+         * Method to determine whether there is a next value.
+         *
+         * @return - boolean that reflects whether the current entry is null.
+         */
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        /**
+         * Next value in FIFO order.
+         *
+         * @return - the value of the current entry
+         */
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final V value = current.value;
+            current = current.next;
+            return value;
+        }
+
+        /**
+         * Do Not Call or you will get an UnsupportedOperationException.
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Append an entry to the list.
+     *
+     * @param e - unlinked entry
+     */
+    private void link(final Entry<K, V> e) {
+        e.prev = last;
+        e.next = null;
+        if (last == null) {
+            first = e;
+        } else {
+            last.next = e;
+        }
+        last = e;
+    }
+
+    /**
+     * Remove an entry from the list.
+     *
+     * @param e - linked entry
+     */
+    private void unlink(final Entry<K, V> e) {
+        if (e.prev == null) {
+            first = e.next;
+        } else {
+            e.prev.next = e.next;
+        }
+        if (e.next == null) {
+            last = e.prev;
+        } else {
+            e.next.prev = e.prev;
+        }
+        e.prev = null;
+        e.next = null;
+    }
+
+    /**
+     * Remove an entry from the index, shifting later entries of its probe
+     * run back so that no tombstones are needed.
+     *
+     * @param e - indexed entry
+     */
+    private void removeFromIndex(final Entry<K, V> e) {
+        final int mask = table.length - 1;
+        int hole = hash(e.key) & mask;
+        while (table[hole] != e) {
+            hole = (hole + 1) & mask;
+        }
+        table[hole] = null;
+        int i = (hole + 1) & mask;
+        while (table[i] != null) {
+            final int home = hash(table[i].key) & mask;
+            // Move the entry into the hole unless its home slot lies
+            // cyclically in (hole, i], where it would become unreachable.
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                table[hole] = table[i];
+                table[i] = null;
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Rebuild the index with a new capacity.
+     *
+     * @param capacity - new capacity, a power of two
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(final int capacity) {
+        final Entry<K, V>[] copy = (Entry<K, V>[]) new Entry<?, ?>[capacity];
+        final int mask = capacity - 1;
+        for (Entry<K, V> e = first; e != null; e = e.next) {
+            int i = hash(e.key) & mask;
+            while (copy[i] != null) {
+                i = (i + 1) & mask;
+            }
+            copy[i] = e;
+        }
+        table = copy;
+    }
+
+    /**
+     * Spread the key's hash code so that linear probing sees well-mixed
+     * low bits.
+     *
+     * @param key - the key
+     * @return - int containing the mixed hash
+     */
+    private static int hash(final Object key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Private static class for a pending key, its value and list links.
+     *
+     * @param <K> - key type
+     * @param <V> - value type
+     */
+    private static final class Entry<K, V> {
+
+        /**
+         * The key.
+         */
+        private final K key;
+
+        /**
+         * The latest value for the key.
+         */
+        private V value;
+
+        /**
+         * Next newer entry.
+         */
+        private Entry<K, V> next;
+
+        /**
+         * Next older entry.
+         */
+        private Entry<K, V> prev;
+
+        /**
+         * Construct an entry.
+         *
+         * @param k - key
+         * @param v - value
+         */
+        private Entry(final K k, final V v) {
+            key = k;
+            value = v;
+        }
+    }
+}
@@ -1,4 +1,7 @@
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Iterator;
 
 /**
@@ -54,10 +57,21 @@ import java.util.Iterator;
  * operations next() and hasNext() (plus construction) in constant worst-case
  * time and use a constant amount of extra space per iterator.
  * </p>
+ * <p>
+ * Removed nodes are cleared so they do not retain items. A deque built with
+ * {@link #Deque(int)} also keeps a bounded free-list of those nodes and
+ * reuses them on <em>addFirst</em>/<em>addLast</em>; removing items while an
+ * iterator is in use gives undefined iteration results.
+ * </p>
+ * <p>
+ * <em>appendAll</em> and <em>prependAll</em> splice a whole deque in
+ * constant time, and <em>splitAt</em> cuts one in two in time proportional
+ * to the distance from the split point to the nearer end.
+ * </p>
  *
  * @param <T> - generic item that will be  referenced in caller/client code.
  */
-public class Deque<T> implements Iterable<T> {
+public class Deque<T> implements Iterable<T>, DequeIF<T> {
     /**
      * Size of the deque.
      */
@@ -73,11 +87,43 @@ public class Deque<T> implements Iterable<T> {
      */
     private final DequeNode<T> tail;
 
+    /**
+     * Maximum number of removed nodes kept for reuse.
+     */
+    private final int recycleLimit;
+
+    /**
+     * Head of the free-list of recycled nodes, linked through next.
+     */
+    private DequeNode<T> recycled;
+
+    /**
+     * Number of nodes currently on the free-list.
+     */
+    private int numRecycled;
+
     /**
      * Construct an empty deque.
      */
     public Deque() {
+        this(0);
+    }
+
+    /**
+     * Construct an empty deque that keeps up to the given number of removed
+     * nodes on a free-list and reuses them on later adds, so a deque whose
+     * size stays roughly constant allocates no new nodes.
+     *
+     * @param maxRecycled - maximum number of nodes kept for reuse; 0 disables
+     *                    recycling.
+     */
+    public Deque(final int maxRecycled) {
+        if (maxRecycled < 0) {
+            throw new IllegalArgumentException(
+                "maxRecycled must be >= 0: " + maxRecycled);
+        }
         size = 0;
+        recycleLimit = maxRecycled;
         head = new DequeNode<T>();
         tail = new DequeNode<T>();
         head.next = tail;
@@ -94,7 +140,7 @@ public class Deque<T> implements Iterable<T> {
             throw new NullPointerException();
         }
         final DequeNode<T> first = head.next;
-        final DequeNode<T> node = new DequeNode<T>();
+        final DequeNode<T> node = newNode();
         node.item = item;
         node.next = first;
         node.prev = head;
@@ -113,7 +159,7 @@ public class Deque<T> implements Iterable<T> {
             throw new NullPointerException();
         }
         final DequeNode<T> last = tail.prev;
-        final DequeNode<T> node = new DequeNode<T>();
+        final DequeNode<T> node = newNode();
         node.item = item;
         node.next = tail;
         node.prev = last;
@@ -140,6 +186,30 @@ public class Deque<T> implements Iterable<T> {
         return new DequeIterator();
     }
 
+    /**
+     * Return (but do not delete) the item at the front.
+     *
+     * @return - the first generic type.
+     */
+    public final T peekFirst() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        return head.next.item;
+    }
+
+    /**
+     * Return (but do not delete) the item at the end.
+     *
+     * @return - the last generic type.
+     */
+    public final T peekLast() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        return tail.prev.item;
+    }
+
     /**
      * Delete and return the item at the front.
      *
@@ -156,7 +226,9 @@ public class Deque<T> implements Iterable<T> {
         head.next = next;
         size--;
 
-        return first.item;
+        final T item = first.item;
+        recycle(first);
+        return item;
     }
 
     /**
@@ -174,7 +246,170 @@ public class Deque<T> implements Iterable<T> {
         prev.next = tail;
         size--;
 
-        return last.item;
+        final T item = last.item;
+        recycle(last);
+        return item;
+    }
+
+    /**
+     * Move every item of another deque to the end of this one, in order,
+     * leaving the other deque empty. Takes constant time.
+     *
+     * @param other - deque whose items are moved; must not be this deque
+     */
+    public final void appendAll(final Deque<T> other) {
+        if (other == this) {
+            throw new IllegalArgumentException(
+                "cannot append a deque to itself");
+        }
+        if (other.isEmpty()) {
+            return;
+        }
+        final DequeNode<T> last = tail.prev;
+        last.next = other.head.next;
+        other.head.next.prev = last;
+        other.tail.prev.next = tail;
+        tail.prev = other.tail.prev;
+        size += other.size;
+        other.clearLinks();
+    }
+
+    /**
+     * Move every item of another deque to the front of this one, in order,
+     * leaving the other deque empty. Takes constant time.
+     *
+     * @param other - deque whose items are moved; must not be this deque
+     */
+    public final void prependAll(final Deque<T> other) {
+        if (other == this) {
+            throw new IllegalArgumentException(
+                "cannot prepend a deque to itself");
+        }
+        if (other.isEmpty()) {
+            return;
+        }
+        final DequeNode<T> first = head.next;
+        first.prev = other.tail.prev;
+        other.tail.prev.next = first;
+        other.head.next.prev = head;
+        head.next = other.head.next;
+        size += other.size;
+        other.clearLinks();
+    }
+
+    /**
+     * Split off the items from position n to the end into a new deque,
+     * keeping the first n items in this one. The split point is found by
+     * walking from whichever end is closer, so this takes time proportional
+     * to min(n, size - n).
+     *
+     * @param n - number of items to keep, between 0 and size
+     * @return - a new deque holding the remaining items in order
+     */
+    public final Deque<T> splitAt(final int n) {
+        if (n < 0 || n > size) {
+            throw new IndexOutOfBoundsException(
+                "split index " + n + ", size " + size);
+        }
+        final Deque<T> rest = new Deque<T>(recycleLimit);
+        if (n == size) {
+            return rest;
+        }
+        DequeNode<T> node;
+        if (n <= size / 2) {
+            node = head.next;
+            for (int i = 0; i < n; i++) {
+                node = node.next;
+            }
+        } else {
+            node = tail;
+            for (int i = size; i > n; i--) {
+                node = node.prev;
+            }
+        }
+        final DequeNode<T> keptLast = node.prev;
+        rest.head.next = node;
+        node.prev = rest.head;
+        rest.tail.prev = tail.prev;
+        tail.prev.next = rest.tail;
+        keptLast.next = tail;
+        tail.prev = keptLast;
+        rest.size = size - n;
+        size = n;
+        return rest;
+    }
+
+    /**
+     * Reset the sentinels to an empty deque after the nodes have been
+     * moved elsewhere.
+     */
+    private void clearLinks() {
+        head.next = tail;
+        tail.prev = head;
+        size = 0;
+    }
+
+    /**
+     * Take a node from the free-list, or allocate one if the list is empty.
+     *
+     * @return - an empty node ready for linking
+     */
+    private DequeNode<T> newNode() {
+        final DequeNode<T> node = recycled;
+        if (node == null) {
+            return new DequeNode<T>();
+        }
+        recycled = node.next;
+        node.next = null;
+        numRecycled--;
+        return node;
+    }
+
+    /**
+     * Clear a removed node and push it on the free-list if there is room.
+     *
+     * @param node - node that has just been unlinked from the deque
+     */
+    private void recycle(final DequeNode<T> node) {
+        node.item = null;
+        node.prev = null;
+        if (numRecycled < recycleLimit) {
+            node.next = recycled;
+            recycled = node;
+            numRecycled++;
+        } else {
+            node.next = null;
+        }
+    }
+
+    /**
+     * Write the items from front to end to a channel in the compact block
+     * format of {@link QueueSerializer}.
+     *
+     * @param channel - destination channel
+     * @param codec   - codec used to encode each item
+     * @throws IOException - if the channel fails
+     */
+    public final void writeTo(final WritableByteChannel channel,
+                              final ElementCodec<? super T> codec)
+        throws IOException {
+        QueueSerializer.write(this, size, codec, channel);
+    }
+
+    /**
+     * Read a deque written by {@link #writeTo(WritableByteChannel,
+     * ElementCodec)}.
+     *
+     * @param channel - source channel
+     * @param codec   - codec used to decode each item
+     * @param <T>     - generic item type
+     * @return - a new deque holding the items in their original order
+     * @throws IOException - if the channel fails or the data is corrupt
+     */
+    public static <T> Deque<T> readFrom(final ReadableByteChannel channel,
+                                        final ElementCodec<T> codec)
+        throws IOException {
+        return QueueSerializer.readDeque(channel, codec);
     }
 
     /**
@@ -0,0 +1,150 @@
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts queue items to and from bytes for {@link QueueSerializer}.
+ * <p/>
+ * An implementation writes exactly {@link #encodedLength(Object)} bytes in
+ * {@link #encode(Object, ByteBuffer)}, and reads back the same bytes in
+ * {@link #decode(ByteBuffer, int)}. The serializer stores the length, so a
+ * codec does not need its own framing.
+ *
+ * @param <T> - generic item to be defined by calling code.
+ */
+public interface ElementCodec<T> {
+
+    /**
+     * Codec for strings, stored as UTF-8.
+     */
+    ElementCodec<String> UTF8 = new ElementCodec<String>() {
+        public int encodedLength(final String item) {
+            int length = 0;
+            for (int i = 0; i < item.length(); i++) {
+                final char c = item.charAt(i);
+                if (c < 0x80) {
+                    length += 1;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c)
+                    && i + 1 < item.length()
+                    && Character.isLowSurrogate(item.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+
+        public void encode(final String item, final ByteBuffer dst) {
+            for (int i = 0; i < item.length(); i++) {
+                final char c = item.charAt(i);
+                if (c < 0x80) {
+                    dst.put((byte) c);
+                } else if (c < 0x800) {
+                    dst.put((byte) (0xC0 | (c >> 6)));
+                    dst.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c)
+                    && i + 1 < item.length()
+                    && Character.isLowSurrogate(item.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, item.charAt(++i));
+                    dst.put((byte) (0xF0 | (cp >> 18)));
+                    dst.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    dst.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    dst.put((byte) (0x80 | (cp & 0x3F)));
+                } else {
+                    // Unpaired surrogates take three bytes so they round-trip,
+                    // even though that is not strictly valid UTF-8.
+                    dst.put((byte) (0xE0 | (c >> 12)));
+                    dst.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    dst.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+        public String decode(final ByteBuffer src, final int length) {
+            final char[] chars = new char[length];
+            int n = 0;
+            final int end = src.position() + length;
+            while (src.position() < end) {
+                final int b = src.get() & 0xFF;
+                if (b < 0x80) {
+                    chars[n++] = (char) b;
+                } else if (b < 0xE0) {
+                    chars[n++] = (char) (((b & 0x1F) << 6)
+                        | (src.get() & 0x3F));
+                } else if (b < 0xF0) {
+                    chars[n++] = (char) (((b & 0x0F) << 12)
+                        | ((src.get() & 0x3F) << 6) | (src.get() & 0x3F));
+                } else {
+                    final int cp = ((b & 0x07) << 18)
+                        | ((src.get() & 0x3F) << 12)
+                        | ((src.get() & 0x3F) << 6) | (src.get() & 0x3F);
+                    chars[n++] = Character.highSurrogate(cp);
+                    chars[n++] = Character.lowSurrogate(cp);
+                }
+            }
+            return new String(chars, 0, n);
+        }
+    };
+
+    /**
+     * Codec for integers, stored as four big-endian bytes.
+     */
+    ElementCodec<Integer> INT = new ElementCodec<Integer>() {
+        public int encodedLength(final Integer item) {
+            return 4;
+        }
+
+        public void encode(final Integer item, final ByteBuffer dst) {
+            dst.putInt(item);
+        }
+
+        public Integer decode(final ByteBuffer src, final int length) {
+            return src.getInt();
+        }
+    };
+
+    /**
+     * Codec for longs, stored as eight big-endian bytes.
+     */
+    ElementCodec<Long> LONG = new ElementCodec<Long>() {
+        public int encodedLength(final Long item) {
+            return 8;
+        }
+
+        public void encode(final Long item, final ByteBuffer dst) {
+            dst.putLong(item);
+        }
+
+        public Long decode(final ByteBuffer src, final int length) {
+            return src.getLong();
+        }
+    };
+
+    /**
+     * Number of bytes the item will be encoded to.
+     *
+     * @param item - the item to measure
+     * @return - int containing the encoded length in bytes
+     */
+    int encodedLength(T item);
+
+    /**
+     * Write the item at the buffer's position.
+     *
+     * @param item - the item to write
+     * @param dst  - buffer with at least encodedLength(item) bytes remaining
+     */
+    void encode(T item, ByteBuffer dst);
+
+    /**
+     * Read an item from the buffer's position.
+     *
+     * @param src    - buffer positioned at the encoded item
+     * @param length - number of bytes the item was encoded to
+     * @return - the decoded item
+     */
+    T decode(ByteBuffer src, int length);
+}
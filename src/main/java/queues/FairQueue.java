@@ -0,0 +1,271 @@
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * This class implements a multi-tenant fair queue scheduled by deficit
+ * round-robin (DRR). Each tenant has its own FIFO {@link Queue}; tenants
+ * with pending items take turns in an active ring. At the start of its turn
+ * a tenant's deficit grows by {@code quantum * weight}, and the tenant is
+ * served while the cost of its next item fits in the deficit. A tenant that
+ * floods the queue therefore only delays others by its share, in proportion
+ * to the weights, instead of by its whole backlog.
+ * </p>
+ * <p/>
+ * <p>
+ * Only tenants with pending items are in the ring, so registered but idle
+ * tenants cost nothing per dequeue. <em>enqueue</em> takes constant
+ * expected time (one hash lookup); <em>dequeue</em> takes constant amortized
+ * time as long as {@code quantum * weight} is at least the typical item
+ * cost, and otherwise visits a tenant at most cost / quantum times before
+ * serving it.
+ * </p>
+ * <p/>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null item or
+ * tenant; throw a java.util.NoSuchElementException if the client attempts to
+ * dequeue from an empty queue.
+ * </p>
+ *
+ * @param <K> - tenant key type.
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class FairQueue<K, T> {
+
+    /**
+     * Removed ring nodes kept for reuse when tenants rotate.
+     */
+    private static final int RECYCLED_NODES = 64;
+
+    /**
+     * Deficit added per unit of weight at the start of a turn.
+     */
+    private final int quantum;
+
+    /**
+     * All tenants that have been registered or have enqueued.
+     */
+    private final Map<K, Tenant<T>> tenants = new HashMap<K, Tenant<T>>();
+
+    /**
+     * Tenants with pending items, in round-robin order.
+     */
+    private final Queue<Tenant<T>> active =
+        new Queue<Tenant<T>>(RECYCLED_NODES);
+
+    /**
+     * Total number of pending items.
+     */
+    private int size;
+
+    /**
+     * Construct a fair queue where each unit of weight earns one unit of
+     * cost per turn.
+     */
+    public FairQueue() {
+        this(1);
+    }
+
+    /**
+     * Construct a fair queue.
+     *
+     * @param q - deficit added per unit of weight at the start of a turn
+     */
+    public FairQueue(final int q) {
+        if (q < 1) {
+            throw new IllegalArgumentException("quantum must be >= 1: " + q);
+        }
+        quantum = q;
+    }
+
+    /**
+     * Register a tenant or change its weight. Unregistered tenants have
+     * weight 1. A new weight applies from the tenant's next turn.
+     *
+     * @param tenant - the tenant
+     * @param weight - relative share of service, at least 1
+     */
+    public final void setWeight(final K tenant, final int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException(
+                "weight must be >= 1: " + weight);
+        }
+        tenant(tenant).weight = weight;
+    }
+
+    /**
+     * Add an item of cost 1 for the tenant.
+     *
+     * @param tenant - the tenant
+     * @param item   - the item
+     */
+    public final void enqueue(final K tenant, final T item) {
+        enqueue(tenant, item, 1);
+    }
+
+    /**
+     * Add an item for the tenant.
+     *
+     * @param tenant - the tenant
+     * @param item   - the item
+     * @param cost   - share of the tenant's deficit the item uses, at least 1
+     */
+    public final void enqueue(final K tenant, final T item, final int cost) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (cost < 1) {
+            throw new IllegalArgumentException("cost must be >= 1: " + cost);
+        }
+        final Tenant<T> t = tenant(tenant);
+        t.add(item, cost);
+        if (!t.active) {
+            t.active = true;
+            active.enqueue(t);
+        }
+        size++;
+    }
+
+    /**
+     * Remove and return the next item in deficit round-robin order.
+     *
+     * @return - the next item
+     */
+    public final T dequeue() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("FairQueue underflow");
+        }
+        while (true) {
+            final Tenant<T> t = active.peek();
+            if (!t.inTurn) {
+                t.inTurn = true;
+                t.deficit += (long) quantum * t.weight;
+            }
+            final long cost = t.costs.peekFirst();
+            if (cost <= t.deficit) {
+                t.deficit -= cost;
+                final T item = t.remove();
+                size--;
+                if (t.items.isEmpty()) {
+                    // An idle tenant does not bank deficit for later.
+                    t.deficit = 0;
+                    t.inTurn = false;
+                    t.active = false;
+                    active.dequeue();
+                }
+                return item;
+            }
+            t.inTurn = false;
+            active.enqueue(active.dequeue());
+        }
+    }
+
+    /**
+     * Is this queue empty?
+     *
+     * @return true if no tenant has a pending item; false otherwise
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the total number of pending items.
+     *
+     * @return the number of items in this queue
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of pending items for one tenant.
+     *
+     * @param tenant - the tenant
+     * @return the number of items the tenant has in this queue
+     */
+    public final int size(final K tenant) {
+        final Tenant<T> t = tenants.get(tenant);
+        return t == null ? 0 : t.items.size();
+    }
+
+    /**
+     * Look up a tenant, creating it with weight 1 if needed.
+     *
+     * @param key - the tenant key
+     * @return - the tenant state
+     */
+    private Tenant<T> tenant(final K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Tenant<T> t = tenants.get(key);
+        if (t == null) {
+            t = new Tenant<T>();
+            tenants.put(key, t);
+        }
+        return t;
+    }
+
+    /**
+     * Private static class holding one tenant's items and DRR state.
+     *
+     * @param <T> - generic item type
+     */
+    private static final class Tenant<T> {
+
+        /**
+         * Pending items in FIFO order; no free-list, so that idle tenants
+         * hold no spare nodes.
+         */
+        private final Queue<T> items = new Queue<T>();
+
+        /**
+         * Costs of the pending items, in step with items.
+         */
+        private final LongRing costs = new LongRing();
+
+        /**
+         * Relative share of service.
+         */
+        private int weight = 1;
+
+        /**
+         * Cost the tenant may still spend in its current turn.
+         */
+        private long deficit;
+
+        /**
+         * Is the tenant in the active ring?
+         */
+        private boolean active;
+
+        /**
+         * Has the tenant's current turn started, i.e. been credited?
+         */
+        private boolean inTurn;
+
+        /**
+         * Append an item and its cost.
+         *
+         * @param item - the item
+         * @param cost - its cost
+         */
+        void add(final T item, final int cost) {
+            costs.addLast(cost);
+            items.enqueue(item);
+        }
+
+        /**
+         * Remove the first item and its cost.
+         *
+         * @return - the item
+         */
+        T remove() {
+            costs.removeFirst();
+            return items.dequeue();
+        }
+    }
+}
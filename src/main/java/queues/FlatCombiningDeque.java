@@ -0,0 +1,580 @@
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * This class implements a thread-safe wrapper around a {@link DequeIF}
+ * using flat combining. Each thread publishes its operation in its own slot
+ * and then tries to take the combiner lock; the thread that gets it runs
+ * every pending operation from every slot in one pass, while the others
+ * wait for their slot to be answered. The wrapped deque is touched by one
+ * core at a time in bursts, so it stays in that core's cache instead of
+ * moving between cores on every operation.
+ * </p>
+ * <p/>
+ * <p>
+ * Within a pass, an add and a remove at the same end cancel out: the remove
+ * (or poll) returns the added item and neither touches the wrapped deque.
+ * Operations pending in the same pass are concurrent, so running them in
+ * that order is linearizable. <em>pollFirst</em> and <em>pollLast</em>
+ * return null instead of throwing when the deque is empty, so a consumer
+ * can test and remove in one combined operation.
+ * </p>
+ * <p/>
+ * <p>
+ * A thread keeps its slot, but the slot leaves the list the combiner scans
+ * once it has been idle for {@value #SLOT_MAX_IDLE} passes and is put back
+ * by its thread's next operation. Slots of threads that have exited are
+ * therefore dropped, and a pass only visits recently active threads. The
+ * iterator works on a copy of the items taken under the combiner lock.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class FlatCombiningDeque<T> implements DequeIF<T>, Iterable<T> {
+
+    /**
+     * Slot state: no operation pending.
+     */
+    private static final int IDLE = 0;
+
+    /**
+     * Operation code for addFirst.
+     */
+    private static final int ADD_FIRST = 1;
+
+    /**
+     * Operation code for addLast.
+     */
+    private static final int ADD_LAST = 2;
+
+    /**
+     * Operation code for removeFirst.
+     */
+    private static final int REMOVE_FIRST = 3;
+
+    /**
+     * Operation code for removeLast.
+     */
+    private static final int REMOVE_LAST = 4;
+
+    /**
+     * Operation code for pollFirst.
+     */
+    private static final int POLL_FIRST = 5;
+
+    /**
+     * Operation code for pollLast.
+     */
+    private static final int POLL_LAST = 6;
+
+    /**
+     * Spins before a waiting thread starts yielding.
+     */
+    private static final int SPINS = 64;
+
+    /**
+     * Passes a slot may go without an operation before it is unlinked.
+     */
+    private static final int SLOT_MAX_IDLE = 1024;
+
+    /**
+     * Passes between scans for idle slots.
+     */
+    private static final int CLEANUP_INTERVAL = 256;
+
+    /**
+     * The wrapped deque; only touched by the combiner.
+     */
+    private final DequeIF<T> deque;
+
+    /**
+     * Combiner lock.
+     */
+    private final AtomicBoolean lock = new AtomicBoolean();
+
+    /**
+     * Head of the publication list of slots.
+     */
+    private final AtomicReference<Slot<T>> slots =
+        new AtomicReference<Slot<T>>();
+
+    /**
+     * Each thread's slot.
+     */
+    private final ThreadLocal<Slot<T>> mySlot = new ThreadLocal<Slot<T>>();
+
+    /**
+     * Size of the wrapped deque after the last pass.
+     */
+    private volatile int size;
+
+    /**
+     * Number of combining passes; written only by the combiner.
+     */
+    private volatile int passes;
+
+    /**
+     * Pending slots gathered by the combiner; only used while locked.
+     */
+    @SuppressWarnings("unchecked")
+    private Slot<T>[] batch = (Slot<T>[]) new Slot<?>[16];
+
+    /**
+     * Construct a wrapper around a new, empty {@link Deque}.
+     */
+    public FlatCombiningDeque() {
+        this(new Deque<T>(64));
+    }
+
+    /**
+     * Construct a wrapper. The caller must not use the wrapped deque
+     * directly afterwards.
+     *
+     * @param d - deque to wrap
+     */
+    public FlatCombiningDeque(final DequeIF<T> d) {
+        if (d == null) {
+            throw new NullPointerException();
+        }
+        deque = d;
+        size = d.size();
+    }
+
+    /**
+     * Is the deque empty?
+     *
+     * @return - boolean indicating whether the deque was empty after the
+     * most recent combining pass.
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the size of the deque.
+     *
+     * @return - the number of items after the most recent combining pass
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Insert the item at the front.
+     *
+     * @param item - Generic implementation.
+     */
+    public final void addFirst(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        apply(ADD_FIRST, item);
+    }
+
+    /**
+     * Insert the item at the end.
+     *
+     * @param item - Generic implementation.
+     */
+    public final void addLast(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        apply(ADD_LAST, item);
+    }
+
+    /**
+     * Delete and return the item at the front.
+     *
+     * @return - the first generic type.
+     */
+    public final T removeFirst() {
+        return apply(REMOVE_FIRST, null);
+    }
+
+    /**
+     * Delete and return the item at the end.
+     *
+     * @return - the last generic type.
+     */
+    public final T removeLast() {
+        return apply(REMOVE_LAST, null);
+    }
+
+    /**
+     * Delete and return the item at the front, if any.
+     *
+     * @return - the first generic type, or null if the deque is empty.
+     */
+    public final T pollFirst() {
+        return apply(POLL_FIRST, null);
+    }
+
+    /**
+     * Delete and return the item at the end, if any.
+     *
+     * @return - the last generic type, or null if the deque is empty.
+     */
+    public final T pollLast() {
+        return apply(POLL_LAST, null);
+    }
+
+    /**
+     * Return an iterator over a copy of the items, front to end.
+     *
+     * @return - iterator over a snapshot
+     */
+    @SuppressWarnings("unchecked")
+    public final Iterator<T> iterator() {
+        acquire();
+        final Object[] copy;
+        try {
+            combine();
+            copy = new Object[deque.size()];
+            int i = 0;
+            for (Iterator<T> it = deque.iterator(); it.hasNext();) {
+                copy[i++] = it.next();
+            }
+        } finally {
+            lock.set(false);
+        }
+        return (Iterator<T>) java.util.Arrays.asList(copy).iterator();
+    }
+
+    /**
+     * Publish an operation and wait until a combiner, possibly this thread,
+     * has run it.
+     *
+     * @param op   - operation code
+     * @param item - argument for adds
+     * @return - result for removes
+     */
+    private T apply(final int op, final T item) {
+        final Slot<T> slot = slot();
+        slot.item = item;
+        slot.op = op;
+        // Publishing op before reading linked pairs with the combiner's
+        // unlink, which clears linked before re-reading op: one of the two
+        // sees the other and puts the slot back.
+        if (!slot.linked.get() && slot.linked.compareAndSet(false, true)) {
+            link(slot);
+        }
+        int spins = 0;
+        while (slot.op != IDLE) {
+            if (!lock.get() && lock.compareAndSet(false, true)) {
+                try {
+                    combine();
+                } finally {
+                    lock.set(false);
+                }
+            } else if (++spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        final RuntimeException error = slot.error;
+        final T result = slot.result;
+        slot.error = null;
+        slot.result = null;
+        if (error != null) {
+            throw error;
+        }
+        return result;
+    }
+
+    /**
+     * Take the combiner lock, waiting if necessary.
+     */
+    private void acquire() {
+        int spins = 0;
+        while (lock.get() || !lock.compareAndSet(false, true)) {
+            if (++spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Run every pending operation; called holding the lock.
+     */
+    private void combine() {
+        final int pass = passes + 1;
+        passes = pass;
+        int n = 0;
+        for (Slot<T> s = slots.get(); s != null; s = s.next) {
+            if (s.op != IDLE) {
+                if (n == batch.length) {
+                    batch = java.util.Arrays.copyOf(batch, n * 2);
+                }
+                batch[n++] = s;
+                s.lastActive = pass;
+            }
+        }
+        if (pass % CLEANUP_INTERVAL == 0) {
+            unlinkIdle(pass);
+        }
+        eliminate(n, ADD_FIRST, REMOVE_FIRST, POLL_FIRST);
+        eliminate(n, ADD_LAST, REMOVE_LAST, POLL_LAST);
+        for (int i = 0; i < n; i++) {
+            final Slot<T> s = batch[i];
+            batch[i] = null;
+            if (s.op == IDLE) {
+                continue;
+            }
+            try {
+                switch (s.op) {
+                    case ADD_FIRST:
+                        deque.addFirst(s.item);
+                        break;
+                    case ADD_LAST:
+                        deque.addLast(s.item);
+                        break;
+                    case REMOVE_FIRST:
+                        s.result = deque.removeFirst();
+                        break;
+                    case REMOVE_LAST:
+                        s.result = deque.removeLast();
+                        break;
+                    case POLL_FIRST:
+                        s.result = deque.isEmpty() ? null
+                            : deque.removeFirst();
+                        break;
+                    default:
+                        s.result = deque.isEmpty() ? null
+                            : deque.removeLast();
+                        break;
+                }
+            } catch (RuntimeException e) {
+                s.error = e;
+            }
+            s.item = null;
+            s.op = IDLE;
+        }
+        size = deque.size();
+    }
+
+    /**
+     * Answer pairs of pending adds and removes at the same end directly.
+     *
+     * @param n      - number of gathered slots
+     * @param add    - add operation code for the end
+     * @param remove - remove operation code for the end
+     * @param poll   - poll operation code for the end
+     */
+    private void eliminate(final int n, final int add, final int remove,
+                           final int poll) {
+        int a = 0;
+        int r = 0;
+        while (true) {
+            while (a < n && batch[a].op != add) {
+                a++;
+            }
+            while (r < n && batch[r].op != remove && batch[r].op != poll) {
+                r++;
+            }
+            if (a == n || r == n) {
+                return;
+            }
+            final Slot<T> adder = batch[a++];
+            final Slot<T> remover = batch[r++];
+            remover.result = adder.item;
+            adder.item = null;
+            adder.op = IDLE;
+            remover.op = IDLE;
+        }
+    }
+
+    /**
+     * Unlink slots that have had no operation for SLOT_MAX_IDLE passes.
+     * The head slot stays, so that unlinking never races with link, which
+     * only changes the head.
+     *
+     * @param pass - the current pass
+     */
+    private void unlinkIdle(final int pass) {
+        Slot<T> prev = slots.get();
+        if (prev == null) {
+            return;
+        }
+        Slot<T> s = prev.next;
+        while (s != null) {
+            final Slot<T> next = s.next;
+            if (s.op == IDLE && pass - s.lastActive > SLOT_MAX_IDLE) {
+                prev.next = next;
+                s.linked.set(false);
+                // The owner may have published an operation meanwhile
+                // without seeing the slot unlinked.
+                if (s.op != IDLE && s.linked.compareAndSet(false, true)) {
+                    link(s);
+                }
+            } else {
+                prev = s;
+            }
+            s = next;
+        }
+    }
+
+    /**
+     * Push a slot on the publication list.
+     *
+     * @param slot - a slot that is not on the list
+     */
+    private void link(final Slot<T> slot) {
+        slot.lastActive = passes;
+        Slot<T> head;
+        do {
+            head = slots.get();
+            slot.next = head;
+        } while (!slots.compareAndSet(head, slot));
+    }
+
+    /**
+     * This thread's slot, creating it on first use. The caller links it
+     * if needed.
+     *
+     * @return - the calling thread's slot
+     */
+    private Slot<T> slot() {
+        Slot<T> slot = mySlot.get();
+        if (slot == null) {
+            slot = new Slot<T>();
+            mySlot.set(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Private static class for one thread's published operation.
+     *
+     * @param <T> - generic item type
+     */
+    private static final class Slot<T> {
+
+        /**
+         * Pending operation code, or IDLE once answered. Written last by
+         * the owner and by the combiner, so it publishes the other fields.
+         */
+        private volatile int op;
+
+        /**
+         * Argument of an add.
+         */
+        private T item;
+
+        /**
+         * Result of a remove.
+         */
+        private T result;
+
+        /**
+         * Exception thrown by the operation, rethrown in the owner.
+         */
+        private RuntimeException error;
+
+        /**
+         * Next slot in the publication list; changed by link before the
+         * slot is published and by the combiner.
+         */
+        private volatile Slot<T> next;
+
+        /**
+         * Is the slot on the publication list? Only the thread that sets
+         * it links the slot.
+         */
+        private final AtomicBoolean linked = new AtomicBoolean();
+
+        /**
+         * Pass in which the slot last had an operation or was linked.
+         */
+        private int lastActive;
+    }
+
+    /**
+     * Contention benchmark: threads repeatedly addFirst then removeLast on
+     * a shared deque, comparing flat combining with a single lock around a
+     * {@link Deque} and with {@link ConcurrentLinkedDeque}.
+     *
+     * @param args - optional thread count (default: processors) and
+     *             milliseconds per run (default 1000)
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0])
+            : Runtime.getRuntime().availableProcessors();
+        final long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        for (int round = 0; round < 3; round++) {
+            final FlatCombiningDeque<Integer> fc =
+                new FlatCombiningDeque<Integer>();
+            final Deque<Integer> locked = new Deque<Integer>(64);
+            final ConcurrentLinkedDeque<Integer> clq =
+                new ConcurrentLinkedDeque<Integer>();
+            report("flat-combining", threads, millis, new Runnable() {
+                public void run() {
+                    fc.addFirst(1);
+                    fc.removeLast();
+                }
+            });
+            report("synchronized", threads, millis, new Runnable() {
+                public void run() {
+                    synchronized (locked) {
+                        locked.addFirst(1);
+                    }
+                    synchronized (locked) {
+                        locked.removeLast();
+                    }
+                }
+            });
+            report("ConcurrentLinkedDeque", threads, millis, new Runnable() {
+                public void run() {
+                    clq.addFirst(1);
+                    clq.pollLast();
+                }
+            });
+        }
+    }
+
+    /**
+     * Run an operation pair on several threads for a while and print the
+     * throughput.
+     *
+     * @param name    - label for the output
+     * @param threads - number of threads
+     * @param millis  - duration of the run
+     * @param pair    - one addFirst/removeLast pair
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    private static void report(final String name, final int threads,
+                               final long millis, final Runnable pair)
+        throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    long n = 0;
+                    while (running.get()) {
+                        pair.run();
+                        n++;
+                    }
+                    ops.addAndGet(n);
+                    done.countDown();
+                }
+            }).start();
+        }
+        Thread.sleep(millis);
+        running.set(false);
+        done.await();
+        System.out.printf("%-22s %2d threads: %,12.0f pairs/s%n", name,
+            threads, ops.get() * 1000.0 / millis);
+    }
+}
@@ -0,0 +1,211 @@
+
+/**
+ * <p>
+ * This class implements a fixed-size, log-linear histogram of non-negative
+ * long values such as latencies in nanoseconds, in the style of an HDR
+ * histogram. Values below 128 are counted exactly; larger values fall into
+ * one of 64 buckets per power of two, so every recorded value is reported
+ * within 1/64 (about 1.6%) of its true value. The histogram always uses 3712
+ * counters, whatever the range of the values.
+ * </p>
+ * <p/>
+ * <p>
+ * <em>record</em> takes constant time and <em>percentile</em> time
+ * proportional to the number of counters. Instances are not thread-safe;
+ * give each thread its own histogram and combine them with
+ * {@link #add(LatencyHistogram)}.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of exact counters, and the first value that is bucketed.
+     */
+    private static final int SUB_BUCKETS = 128;
+
+    /**
+     * Number of buckets per power of two above SUB_BUCKETS.
+     */
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    /**
+     * log2(HALF).
+     */
+    private static final int HALF_BITS = 6;
+
+    /**
+     * Counts per bucket.
+     */
+    private final long[] counts = new long[SUB_BUCKETS + 56 * HALF];
+
+    /**
+     * Number of recorded values.
+     */
+    private long total;
+
+    /**
+     * Largest recorded value.
+     */
+    private long max;
+
+    /**
+     * Smallest recorded value.
+     */
+    private long min = Long.MAX_VALUE;
+
+    /**
+     * Sum of recorded values, for the mean.
+     */
+    private double sum;
+
+    /**
+     * Record a value.
+     *
+     * @param value - value to record, at least 0
+     */
+    public final void record(final long value) {
+        recordCount(value, 1);
+    }
+
+    /**
+     * Record a value as if it had been seen count times.
+     *
+     * @param value - value to record, at least 0
+     * @param count - number of occurrences
+     */
+    public final void recordCount(final long value, final long count) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative value " + value);
+        }
+        counts[index(value)] += count;
+        total += count;
+        sum += (double) value * count;
+        if (value > max) {
+            max = value;
+        }
+        if (value < min) {
+            min = value;
+        }
+    }
+
+    /**
+     * Add every count of another histogram to this one.
+     *
+     * @param other - histogram to add
+     */
+    public final void add(final LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        if (other.max > max) {
+            max = other.max;
+        }
+        if (other.min < min) {
+            min = other.min;
+        }
+    }
+
+    /**
+     * Remove every recorded value.
+     */
+    public final void reset() {
+        java.util.Arrays.fill(counts, 0);
+        total = 0;
+        sum = 0;
+        max = 0;
+        min = Long.MAX_VALUE;
+    }
+
+    /**
+     * Value at or below which the given percentage of values fall.
+     *
+     * @param percent - percentile between 0 and 100, e.g. 99.9
+     * @return - the largest value equivalent to the percentile's bucket,
+     * or 0 if the histogram is empty
+     */
+    public final long percentile(final double percent) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("percent " + percent);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percent / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Method that acts as getter for the number of recorded values.
+     *
+     * @return - long containing the number of values
+     */
+    public final long count() {
+        return total;
+    }
+
+    /**
+     * Method that acts as getter for the largest recorded value.
+     *
+     * @return - the maximum, or 0 if empty
+     */
+    public final long max() {
+        return max;
+    }
+
+    /**
+     * Method that acts as getter for the smallest recorded value.
+     *
+     * @return - the minimum, or 0 if empty
+     */
+    public final long min() {
+        return total == 0 ? 0 : min;
+    }
+
+    /**
+     * Method that acts as getter for the mean of the recorded values.
+     *
+     * @return - the mean, or 0 if empty
+     */
+    public final double mean() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Bucket index of a value.
+     *
+     * @param value - non-negative value
+     * @return - index into counts
+     */
+    private static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - HALF_BITS;
+        final int top = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF + (top - HALF);
+    }
+
+    /**
+     * Largest value that falls in a bucket.
+     *
+     * @param index - index into counts
+     * @return - the bucket's upper bound
+     */
+    private static long highestEquivalent(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKETS) / HALF + 1;
+        final long top = (index - SUB_BUCKETS) % HALF + HALF;
+        return (top << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,119 @@
+
+/**
+ * <p>
+ * This class tracks the minimum and maximum of a sliding time window over a
+ * stream of {@code long} samples. It works like {@link MinMaxWindow}, but
+ * keeps each monotonic deque as a pair of {@link LongRing}s, one of values
+ * and one of timestamps, so no sample is boxed and no memory is allocated
+ * once the rings have grown to fit the window. The rings shrink again when
+ * the window does, so a burst does not leave its memory behind.
+ * </p>
+ * <p/>
+ * <p>
+ * <em>push</em> and <em>evictOlderThan</em> take constant amortized time and
+ * <em>min</em> and <em>max</em> take constant worst-case time. Timestamps
+ * must not decrease from one push to the next.
+ * </p>
+ */
+public class LongMinMaxWindow {
+
+    /**
+     * Values in increasing order, oldest first.
+     */
+    private final LongRing mins = new LongRing();
+
+    /**
+     * Timestamps of the values in mins.
+     */
+    private final LongRing minTimes = new LongRing();
+
+    /**
+     * Values in decreasing order, oldest first.
+     */
+    private final LongRing maxes = new LongRing();
+
+    /**
+     * Timestamps of the values in maxes.
+     */
+    private final LongRing maxTimes = new LongRing();
+
+    /**
+     * Timestamp of the most recent push.
+     */
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Add a sample.
+     *
+     * @param value     - the sample value
+     * @param timestamp - time of the sample, not less than the previous one
+     */
+    public final void push(final long value, final long timestamp) {
+        if (timestamp < lastTimestamp) {
+            throw new IllegalArgumentException("timestamp " + timestamp
+                + " is before previous timestamp " + lastTimestamp);
+        }
+        lastTimestamp = timestamp;
+        while (!mins.isEmpty() && mins.peekLast() >= value) {
+            mins.removeLast();
+            minTimes.removeLast();
+        }
+        mins.addLast(value);
+        minTimes.addLast(timestamp);
+        while (!maxes.isEmpty() && maxes.peekLast() <= value) {
+            maxes.removeLast();
+            maxTimes.removeLast();
+        }
+        maxes.addLast(value);
+        maxTimes.addLast(timestamp);
+    }
+
+    /**
+     * Drop every sample whose timestamp is less than t.
+     *
+     * @param t - oldest timestamp to keep
+     */
+    public final void evictOlderThan(final long t) {
+        while (!minTimes.isEmpty() && minTimes.peekFirst() < t) {
+            minTimes.removeFirst();
+            mins.removeFirst();
+        }
+        while (!maxTimes.isEmpty() && maxTimes.peekFirst() < t) {
+            maxTimes.removeFirst();
+            maxes.removeFirst();
+        }
+    }
+
+    /**
+     * Is the window empty?
+     *
+     * @return - boolean indicating whether the window holds any samples.
+     */
+    public final boolean isEmpty() {
+        return mins.isEmpty();
+    }
+
+    /**
+     * Return the smallest value in the window.
+     *
+     * @return - the minimum value
+     */
+    public final long min() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        return mins.peekFirst();
+    }
+
+    /**
+     * Return the largest value in the window.
+     *
+     * @return - the maximum value
+     */
+    public final long max() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        return maxes.peekFirst();
+    }
+}
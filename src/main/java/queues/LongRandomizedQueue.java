@@ -0,0 +1,94 @@
+
+/**
+ * <p>
+ * This class implements a randomized queue of {@code long} values. It works
+ * like {@link RandomizedQueue}, but keeps the items in a primitive array, so
+ * no item is boxed: each costs eight bytes. Because the order of the array
+ * does not matter, <em>dequeue</em> moves the last item into the slot of the
+ * one removed and the items always occupy the front of the array.
+ * </p>
+ * <p/>
+ * <p>
+ * Each operation takes constant amortized time and the array is halved when
+ * it becomes a quarter full. Throw a java.util.NoSuchElementException if the
+ * client attempts to sample or dequeue an item from an empty randomized
+ * queue.
+ * </p>
+ */
+public class LongRandomizedQueue {
+
+    /**
+     * Threshold for call to reduction strategy.
+     */
+    private static final int REDUCTION_THRESHOLD = 4;
+
+    /**
+     * The items, in positions 0 to size - 1.
+     */
+    private long[] queue = new long[2];
+
+    /**
+     * Number of items.
+     */
+    private int size;
+
+    /**
+     * Is the queue empty?
+     *
+     * @return boolean that reflects whether the queue is empty
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Method that acts as getter for size.
+     *
+     * @return int - current size of queue
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Add the item.
+     *
+     * @param item - the value
+     */
+    public final void enqueue(final long item) {
+        if (size == queue.length) {
+            queue = java.util.Arrays.copyOf(queue, 2 * size);
+        }
+        queue[size++] = item;
+    }
+
+    /**
+     * Delete and return a random item.
+     *
+     * @return - the value
+     */
+    public final long dequeue() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        final int i = StdRandom.uniform(size);
+        final long item = queue[i];
+        queue[i] = queue[--size];
+        if (size > 0 && size == queue.length / REDUCTION_THRESHOLD) {
+            queue = java.util.Arrays.copyOf(queue, queue.length / 2);
+        }
+        return item;
+    }
+
+    /**
+     * Return (but do not delete) a random item.
+     *
+     * @return - the value
+     */
+    public final long sample() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        return queue[StdRandom.uniform(size)];
+    }
+}
@@ -0,0 +1,155 @@
+
+/**
+ * <p>
+ * This class implements a double-ended queue of {@code long} values in a
+ * circular primitive array, for keeping a number per item (an enqueue time
+ * or a cost) in step with a {@link Queue} or {@link Deque} of the items
+ * themselves: add a value whenever an item is added and remove one from the
+ * same end whenever an item is removed.
+ * </p>
+ * <p/>
+ * <p>
+ * The array doubles when full and halves when a quarter full, down to
+ * {@value #MIN_CAPACITY} slots, so a burst does not leave a peak-sized array
+ * behind. Each operation takes constant amortized time. Throw a
+ * java.util.NoSuchElementException if the client attempts to peek at or
+ * remove a value from an empty ring.
+ * </p>
+ */
+public final class LongRing {
+
+    /**
+     * Smallest array length.
+     */
+    private static final int MIN_CAPACITY = 4;
+
+    /**
+     * Threshold for call to reduction strategy.
+     */
+    private static final int REDUCTION_THRESHOLD = 4;
+
+    /**
+     * The values; the length is a power of two.
+     */
+    private long[] values = new long[MIN_CAPACITY];
+
+    /**
+     * Index of the first value.
+     */
+    private int head;
+
+    /**
+     * Number of values.
+     */
+    private int size;
+
+    /**
+     * Is the ring empty?
+     *
+     * @return boolean that reflects whether the ring is empty or not.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Method that acts as getter for size.
+     *
+     * @return int - the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a value at the end.
+     *
+     * @param value - the value
+     */
+    public void addLast(final long value) {
+        if (size == values.length) {
+            resize(2 * size);
+        }
+        values[(head + size) & (values.length - 1)] = value;
+        size++;
+    }
+
+    /**
+     * Return (but do not delete) the first value.
+     *
+     * @return - the oldest value
+     */
+    public long peekFirst() {
+        if (size == 0) {
+            throw new java.util.NoSuchElementException();
+        }
+        return values[head];
+    }
+
+    /**
+     * Return (but do not delete) the last value.
+     *
+     * @return - the newest value
+     */
+    public long peekLast() {
+        if (size == 0) {
+            throw new java.util.NoSuchElementException();
+        }
+        return values[(head + size - 1) & (values.length - 1)];
+    }
+
+    /**
+     * Delete and return the first value.
+     *
+     * @return - the oldest value
+     */
+    public long removeFirst() {
+        if (size == 0) {
+            throw new java.util.NoSuchElementException();
+        }
+        final long value = values[head];
+        head = (head + 1) & (values.length - 1);
+        size--;
+        shrink();
+        return value;
+    }
+
+    /**
+     * Delete and return the last value.
+     *
+     * @return - the newest value
+     */
+    public long removeLast() {
+        if (size == 0) {
+            throw new java.util.NoSuchElementException();
+        }
+        size--;
+        final long value = values[(head + size) & (values.length - 1)];
+        shrink();
+        return value;
+    }
+
+    /**
+     * Halve the array if it has fallen to a quarter full.
+     */
+    private void shrink() {
+        if (values.length > MIN_CAPACITY
+            && size == values.length / REDUCTION_THRESHOLD) {
+            resize(values.length / 2);
+        }
+    }
+
+    /**
+     * Move the values to an array of a new length.
+     *
+     * @param capacity - new length, a power of two not less than size
+     */
+    private void resize(final int capacity) {
+        final long[] copy = new long[capacity];
+        for (int i = 0; i < size; i++) {
+            copy[i] = values[(head + i) & (values.length - 1)];
+        }
+        values = copy;
+        head = 0;
+    }
+}
@@ -0,0 +1,169 @@
+
+import java.util.Comparator;
+
+/**
+ * <p>
+ * This class tracks the minimum and maximum of a sliding time window over a
+ * stream of samples using two monotonic {@link Deque}s. The min deque holds
+ * samples in increasing order of value and the max deque in decreasing
+ * order; a new sample first removes from the end of each deque every sample
+ * it makes irrelevant, and expired samples are removed from the front.
+ * </p>
+ * <p/>
+ * <p>
+ * Each sample is added to and removed from each deque at most once, so
+ * <em>push</em> and <em>evictOlderThan</em> take constant amortized time and
+ * <em>min</em> and <em>max</em> take constant worst-case time. Timestamps
+ * must not decrease from one push to the next. The values are held in a
+ * {@link Deque} that reuses removed nodes and the timestamps in a parallel
+ * {@link LongRing}, so once the window has settled a push allocates nothing.
+ * See {@link DoubleMinMaxWindow} and {@link LongMinMaxWindow} for versions
+ * that do not box primitive samples.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class MinMaxWindow<T> {
+
+    /**
+     * Nodes kept for reuse by each deque.
+     */
+    private static final int RECYCLED_NODES = 64;
+
+    /**
+     * Values in increasing order, oldest first.
+     */
+    private final Deque<T> mins = new Deque<T>(RECYCLED_NODES);
+
+    /**
+     * Timestamps of the values in mins.
+     */
+    private final LongRing minTimes = new LongRing();
+
+    /**
+     * Values in decreasing order, oldest first.
+     */
+    private final Deque<T> maxes = new Deque<T>(RECYCLED_NODES);
+
+    /**
+     * Timestamps of the values in maxes.
+     */
+    private final LongRing maxTimes = new LongRing();
+
+    /**
+     * Ordering of the values.
+     */
+    private final Comparator<? super T> comparator;
+
+    /**
+     * Timestamp of the most recent push.
+     */
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Construct an empty window ordered by the given comparator.
+     *
+     * @param c - ordering of the values
+     */
+    public MinMaxWindow(final Comparator<? super T> c) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        comparator = c;
+    }
+
+    /**
+     * Construct an empty window over values in their natural order.
+     *
+     * @param <T> - comparable item type
+     * @return - a new window
+     */
+    public static <T extends Comparable<? super T>> MinMaxWindow<T> natural() {
+        return new MinMaxWindow<T>(new Comparator<T>() {
+            public int compare(final T a, final T b) {
+                return a.compareTo(b);
+            }
+        });
+    }
+
+    /**
+     * Add a sample.
+     *
+     * @param value     - the sample value
+     * @param timestamp - time of the sample, not less than the previous one
+     */
+    public final void push(final T value, final long timestamp) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        if (timestamp < lastTimestamp) {
+            throw new IllegalArgumentException("timestamp " + timestamp
+                + " is before previous timestamp " + lastTimestamp);
+        }
+        lastTimestamp = timestamp;
+        while (!mins.isEmpty()
+            && comparator.compare(mins.peekLast(), value) >= 0) {
+            mins.removeLast();
+            minTimes.removeLast();
+        }
+        mins.addLast(value);
+        minTimes.addLast(timestamp);
+        while (!maxes.isEmpty()
+            && comparator.compare(maxes.peekLast(), value) <= 0) {
+            maxes.removeLast();
+            maxTimes.removeLast();
+        }
+        maxes.addLast(value);
+        maxTimes.addLast(timestamp);
+    }
+
+    /**
+     * Drop every sample whose timestamp is less than t.
+     *
+     * @param t - oldest timestamp to keep
+     */
+    public final void evictOlderThan(final long t) {
+        while (!minTimes.isEmpty() && minTimes.peekFirst() < t) {
+            minTimes.removeFirst();
+            mins.removeFirst();
+        }
+        while (!maxTimes.isEmpty() && maxTimes.peekFirst() < t) {
+            maxTimes.removeFirst();
+            maxes.removeFirst();
+        }
+    }
+
+    /**
+     * Is the window empty? The latest sample is always in both deques until
+     * it is evicted, so this is true only once every sample has been.
+     *
+     * @return - boolean indicating whether the window holds any samples.
+     */
+    public final boolean isEmpty() {
+        return mins.isEmpty();
+    }
+
+    /**
+     * Return the smallest value in the window.
+     *
+     * @return - the minimum value
+     */
+    public final T min() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        return mins.peekFirst();
+    }
+
+    /**
+     * Return the largest value in the window.
+     *
+     * @return - the maximum value
+     */
+    public final T max() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        return maxes.peekFirst();
+    }
+}
@@ -0,0 +1,155 @@
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * This class implements a fixed-capacity ring buffer that keeps the most
+ * recent items: once it is full, each <em>add</em> overwrites the oldest
+ * item. Nothing is allocated per item, and the number of overwritten items
+ * is always available from {@link #overwritten()}.
+ * </p>
+ * <p/>
+ * <p>
+ * One thread may add while any number of threads take snapshots, without
+ * locks. The writer announces each sequence number before writing its slot
+ * and publishes it afterwards; a reader copies the published items and then
+ * discards any whose slot the writer may have claimed during the copy, so
+ * every snapshot is a contiguous, in-order run of the newest items.
+ * <em>add</em> takes constant time and <em>snapshot</em> time proportional
+ * to the number of items copied.
+ * </p>
+ * <p/>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null item.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class OverwritingRingBuffer<T> {
+
+    /**
+     * The slots; item with sequence number s lives at s % capacity.
+     */
+    private final AtomicReferenceArray<T> slots;
+
+    /**
+     * Number of slots.
+     */
+    private final int capacity;
+
+    /**
+     * Sequence numbers whose slot the writer has started to write.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Sequence numbers whose slot has been completely written.
+     */
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * Construct an empty buffer.
+     *
+     * @param c - number of most recent items to keep, at least 1
+     */
+    public OverwritingRingBuffer(final int c) {
+        if (c < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1: " + c);
+        }
+        capacity = c;
+        slots = new AtomicReferenceArray<T>(c);
+    }
+
+    /**
+     * Add an item, overwriting the oldest one if the buffer is full. Must
+     * only be called from one thread at a time.
+     *
+     * @param item - generic object
+     */
+    public final void add(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        final long seq = claimed.get();
+        claimed.set(seq + 1);
+        slots.set((int) (seq % capacity), item);
+        published.lazySet(seq + 1);
+    }
+
+    /**
+     * Copy the newest items, oldest first, into the array.
+     *
+     * @param out - destination; at most out.length items are copied
+     * @return - the number of items copied to the start of out
+     */
+    public final int snapshot(final T[] out) {
+        while (true) {
+            final long end = published.get();
+            final long start = Math.max(0,
+                end - Math.min(capacity, out.length));
+            if (start == end) {
+                return 0;
+            }
+            for (long s = start; s < end; s++) {
+                out[(int) (s - start)] = slots.get((int) (s % capacity));
+            }
+            // Slots of sequence numbers below claimed - capacity may have
+            // been rewritten while they were being copied.
+            final long valid = Math.max(start, claimed.get() - capacity);
+            if (valid < end) {
+                final int n = (int) (end - valid);
+                if (valid > start) {
+                    System.arraycopy(out, (int) (valid - start), out, 0, n);
+                }
+                return n;
+            }
+            // The writer lapped the whole copy; try again.
+        }
+    }
+
+    /**
+     * Method that acts as getter for the number of items held.
+     *
+     * @return int - min(items added, capacity)
+     */
+    public final int size() {
+        return (int) Math.min(published.get(), capacity);
+    }
+
+    /**
+     * Is the buffer empty?
+     *
+     * @return boolean that reflects whether any item has been added.
+     */
+    public final boolean isEmpty() {
+        return published.get() == 0;
+    }
+
+    /**
+     * Method that acts as getter for the fixed capacity.
+     *
+     * @return int - the number of items kept
+     */
+    public final int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Total number of items ever added.
+     *
+     * @return long - the number of adds
+     */
+    public final long added() {
+        return published.get();
+    }
+
+    /**
+     * Number of items lost because newer items overwrote them.
+     *
+     * @return long - max(0, items added - capacity)
+     */
+    public final long overwritten() {
+        return Math.max(0, published.get() - capacity);
+    }
+}
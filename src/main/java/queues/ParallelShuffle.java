@@ -0,0 +1,193 @@
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * This class shuffles an array range in place, uniformly at random, on the
+ * common fork-join pool using MergeShuffle: the range is split in halves that
+ * are shuffled in parallel, and each pair of shuffled halves is merged by
+ * repeatedly taking the next item from one half or the other on a fair coin
+ * flip; when one half runs out, each remaining item is swapped with a random
+ * earlier position of the merged range. Every task draws from its own
+ * {@link SplittableRandom}, split from its parent's, so tasks share no
+ * random state.
+ * </p>
+ * <p/>
+ * <p>
+ * The shuffle does linear work plus O(n log n) coin flips, taken 64 at a
+ * time from one random long, and no extra memory beyond the task stack.
+ * Ranges below {@value #SEQUENTIAL_THRESHOLD} items are shuffled by
+ * Fisher-Yates on the calling thread.
+ * </p>
+ */
+public final class ParallelShuffle {
+
+    /**
+     * Ranges smaller than this are not split.
+     */
+    public static final int SEQUENTIAL_THRESHOLD = 1 << 16;
+
+    /**
+     * No argument constructor made private to avoid instantiation.
+     */
+    private ParallelShuffle() {
+    }
+
+    /**
+     * Shuffle a[lo..hi) uniformly at random.
+     *
+     * @param a    - the array
+     * @param lo   - first index of the range
+     * @param hi   - index past the end of the range
+     * @param seed - seed of the random stream
+     */
+    public static void shuffle(final Object[] a, final int lo, final int hi,
+                               final long seed) {
+        if (lo < 0 || hi > a.length || lo > hi) {
+            throw new IndexOutOfBoundsException(
+                "range [" + lo + ", " + hi + ") of " + a.length);
+        }
+        final SplittableRandom random = new SplittableRandom(seed);
+        if (hi - lo < SEQUENTIAL_THRESHOLD) {
+            fisherYates(a, lo, hi, random);
+        } else {
+            ForkJoinPool.commonPool().invoke(
+                new ShuffleTask(a, lo, hi, random));
+        }
+    }
+
+    /**
+     * Shuffle a[lo..hi) on the calling thread.
+     *
+     * @param a      - the array
+     * @param lo     - first index of the range
+     * @param hi     - index past the end of the range
+     * @param random - random stream
+     */
+    private static void fisherYates(final Object[] a, final int lo,
+                                    final int hi,
+                                    final SplittableRandom random) {
+        for (int i = lo + 1; i < hi; i++) {
+            exchange(a, i, lo + random.nextInt(i - lo + 1));
+        }
+    }
+
+    /**
+     * Merge two shuffled adjacent ranges a[lo..mid) and a[mid..hi) into one
+     * shuffled range.
+     *
+     * @param a      - the array
+     * @param lo     - first index of the left range
+     * @param mid    - first index of the right range
+     * @param hi     - index past the end of the right range
+     * @param random - random stream
+     */
+    private static void merge(final Object[] a, final int lo, final int mid,
+                              final int hi, final SplittableRandom random) {
+        int i = lo;
+        int j = mid;
+        long coins = 0;
+        int left = 0;
+        while (true) {
+            if (left == 0) {
+                coins = random.nextLong();
+                left = Long.SIZE;
+            }
+            final boolean right = (coins & 1) != 0;
+            coins >>>= 1;
+            left--;
+            if (right) {
+                if (j == hi) {
+                    break;
+                }
+                exchange(a, i, j++);
+            } else if (i == j) {
+                break;
+            }
+            i++;
+        }
+        // One half ran out; place each remaining item at a random position
+        // of the merged prefix.
+        for (; i < hi; i++) {
+            exchange(a, i, lo + random.nextInt(i - lo + 1));
+        }
+    }
+
+    /**
+     * Exchange two array positions.
+     *
+     * @param a - the array
+     * @param i - int containing value for ith element
+     * @param j - int containing value for jth element
+     */
+    private static void exchange(final Object[] a, final int i, final int j) {
+        final Object swap = a[i];
+        a[i] = a[j];
+        a[j] = swap;
+    }
+
+    /**
+     * Private static class for shuffling one range: shuffle both halves in
+     * parallel, then merge them.
+     */
+    private static final class ShuffleTask extends RecursiveAction {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The array.
+         */
+        private final Object[] a;
+
+        /**
+         * First index of the range.
+         */
+        private final int lo;
+
+        /**
+         * Index past the end of the range.
+         */
+        private final int hi;
+
+        /**
+         * This task's random stream.
+         */
+        private final SplittableRandom random;
+
+        /**
+         * Construct a task.
+         *
+         * @param array - the array
+         * @param from  - first index of the range
+         * @param to    - index past the end of the range
+         * @param r     - random stream owned by the task
+         */
+        ShuffleTask(final Object[] array, final int from, final int to,
+                    final SplittableRandom r) {
+            a = array;
+            lo = from;
+            hi = to;
+            random = r;
+        }
+
+        /**
+         * Shuffle the range.
+         */
+        @Override
+        protected void compute() {
+            if (hi - lo < SEQUENTIAL_THRESHOLD) {
+                fisherYates(a, lo, hi, random);
+                return;
+            }
+            final int mid = (lo + hi) >>> 1;
+            invokeAll(new ShuffleTask(a, lo, mid, random.split()),
+                new ShuffleTask(a, mid, hi, random.split()));
+            merge(a, lo, mid, hi, random);
+        }
+    }
+}
@@ -0,0 +1,636 @@
+
+import java.util.Iterator;
+
+/**
+ * <p>
+ * This class implements an immutable, persistent double-ended queue (deque)
+ * as Okasaki's real-time deque: a front stream and a reversed rear stream of
+ * shared, immutable cells. Every update returns a new version of the deque
+ * and leaves the old one untouched, and versions share all unchanged cells,
+ * so taking a snapshot is a plain reference copy.
+ * </p>
+ * <p/>
+ * <p>
+ * The two streams are kept within a constant factor of each other. When one
+ * grows past that bound the items are split evenly again, but lazily: the
+ * new streams are suspensions that produce one cell at a time when forced,
+ * and each version carries a schedule of the cells still to be forced.
+ * Every update forces one or two scheduled cells, so a rebalance is paid
+ * for step by step before the next one is due and no operation does more
+ * than constant work. Because forced cells are memoized and shared, this
+ * holds for every version, including old snapshots that are updated again:
+ * <em>addFirst</em>, <em>addLast</em>, <em>removeFirst</em>,
+ * <em>removeLast</em>, <em>size</em>, <em>isEmpty</em>, <em>peekFirst</em>
+ * and <em>peekLast</em> all take constant worst-case time.
+ * </p>
+ * <p/>
+ * <p>
+ * Because versions never change observably, any number of readers may
+ * iterate a version without locking while a writer derives new ones. Two
+ * threads forcing the same suspension at once may both compute it; they
+ * compute equal cells, and one result is kept. The usual pattern is a
+ * single writer publishing through a volatile field:
+ * </p>
+ * <pre>
+ * {@code
+ * private volatile PersistentDeque<Event> events = PersistentDeque.empty();
+ *
+ * void onEvent(Event e) {               // writer
+ *     events = events.addLast(e);
+ * }
+ *
+ * for (Event e : events) { ... }        // any reader, lock-free
+ * }
+ * </pre>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null item;
+ * throw a java.util.NoSuchElementException if the client attempts to peek
+ * at or remove an item from an empty deque; throw an
+ * UnsupportedOperationException if the client calls the remove() method in
+ * the iterator.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public final class PersistentDeque<T> implements Iterable<T> {
+
+    /**
+     * Maximum ratio allowed between the lengths of the two streams; the
+     * real-time schedule requires 2 or 3.
+     */
+    private static final int BALANCE_FACTOR = 3;
+
+    /**
+     * Shared empty deque.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final PersistentDeque EMPTY = new PersistentDeque<Object>(
+        Stream.empty(), 0, Stream.empty(), Stream.empty(), 0, Stream.empty());
+
+    /**
+     * Front stream, first item at its head.
+     */
+    private final Stream<T> front;
+
+    /**
+     * Length of the front stream.
+     */
+    private final int frontSize;
+
+    /**
+     * Unforced suffix of the front stream.
+     */
+    private final Stream<T> frontSchedule;
+
+    /**
+     * Rear stream, last item at its head.
+     */
+    private final Stream<T> rear;
+
+    /**
+     * Length of the rear stream.
+     */
+    private final int rearSize;
+
+    /**
+     * Unforced suffix of the rear stream.
+     */
+    private final Stream<T> rearSchedule;
+
+    /**
+     * Private constructor; versions are obtained from {@link #empty()} and
+     * the update methods.
+     *
+     * @param f  - front stream
+     * @param fs - length of the front stream
+     * @param sf - front schedule
+     * @param r  - rear stream
+     * @param rs - length of the rear stream
+     * @param sr - rear schedule
+     */
+    private PersistentDeque(final Stream<T> f, final int fs,
+                            final Stream<T> sf, final Stream<T> r,
+                            final int rs, final Stream<T> sr) {
+        front = f;
+        frontSize = fs;
+        frontSchedule = sf;
+        rear = r;
+        rearSize = rs;
+        rearSchedule = sr;
+    }
+
+    /**
+     * Return the empty deque.
+     *
+     * @param <T> - generic item type
+     * @return - the shared empty deque
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentDeque<T> empty() {
+        return (PersistentDeque<T>) EMPTY;
+    }
+
+    /**
+     * Is the deque empty?
+     *
+     * @return - boolean indicating whether the deque is or is not empty.
+     */
+    public boolean isEmpty() {
+        return frontSize + rearSize == 0;
+    }
+
+    /**
+     * Get the size of the deque.
+     *
+     * @return - return the number of items on the deque
+     */
+    public int size() {
+        return frontSize + rearSize;
+    }
+
+    /**
+     * Return a deque with the item inserted at the front.
+     *
+     * @param item - Generic implementation.
+     * @return - the new version of the deque
+     */
+    public PersistentDeque<T> addFirst(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        return check(Stream.cons(item, front), frontSize + 1,
+            exec1(frontSchedule), rear, rearSize, exec1(rearSchedule));
+    }
+
+    /**
+     * Return a deque with the item inserted at the end.
+     *
+     * @param item - Generic implementation.
+     * @return - the new version of the deque
+     */
+    public PersistentDeque<T> addLast(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        return check(front, frontSize, exec1(frontSchedule),
+            Stream.cons(item, rear), rearSize + 1, exec1(rearSchedule));
+    }
+
+    /**
+     * Return (but do not delete) the item at the front.
+     *
+     * @return - the first generic type.
+     */
+    public T peekFirst() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        // The balance invariant leaves at most one item when a stream is
+        // empty.
+        final Cell<T> f = front.force();
+        return f == null ? rear.force().item : f.item;
+    }
+
+    /**
+     * Return (but do not delete) the item at the end.
+     *
+     * @return - the last generic type.
+     */
+    public T peekLast() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        final Cell<T> r = rear.force();
+        return r == null ? front.force().item : r.item;
+    }
+
+    /**
+     * Return a deque without the item at the front.
+     *
+     * @return - the new version of the deque
+     */
+    public PersistentDeque<T> removeFirst() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        final Cell<T> f = front.force();
+        if (f == null) {
+            return empty();
+        }
+        return check(f.next, frontSize - 1, exec2(frontSchedule),
+            rear, rearSize, exec2(rearSchedule));
+    }
+
+    /**
+     * Return a deque without the item at the end.
+     *
+     * @return - the new version of the deque
+     */
+    public PersistentDeque<T> removeLast() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        final Cell<T> r = rear.force();
+        if (r == null) {
+            return empty();
+        }
+        return check(front, frontSize, exec2(frontSchedule),
+            r.next, rearSize - 1, exec2(rearSchedule));
+    }
+
+    /**
+     * Build a version from the given streams, splitting the items evenly
+     * between them, lazily, if one has grown too long relative to the other.
+     * A fresh rebalance becomes its own schedule.
+     *
+     * @param f  - front stream
+     * @param fs - length of the front stream
+     * @param sf - front schedule
+     * @param r  - rear stream
+     * @param rs - length of the rear stream
+     * @param sr - rear schedule
+     * @return - a balanced deque holding the given streams
+     */
+    private static <T> PersistentDeque<T> check(final Stream<T> f,
+                                                final int fs,
+                                                final Stream<T> sf,
+                                                final Stream<T> r,
+                                                final int rs,
+                                                final Stream<T> sr) {
+        final int n = fs + rs;
+        if (n == 0) {
+            return empty();
+        }
+        if (fs > BALANCE_FACTOR * rs + 1) {
+            final int keep = n / 2;
+            final Stream<T> newFront = take(keep, f);
+            final Stream<T> newRear = rotateDrop(r, keep, f);
+            return new PersistentDeque<T>(newFront, keep, newFront,
+                newRear, n - keep, newRear);
+        }
+        if (rs > BALANCE_FACTOR * fs + 1) {
+            final int keep = n / 2;
+            final Stream<T> newRear = take(keep, r);
+            final Stream<T> newFront = rotateDrop(f, keep, r);
+            return new PersistentDeque<T>(newFront, n - keep, newFront,
+                newRear, keep, newRear);
+        }
+        return new PersistentDeque<T>(f, fs, sf, r, rs, sr);
+    }
+
+    /**
+     * Force the first cell of a schedule.
+     *
+     * @param s - schedule
+     * @return - the rest of the schedule
+     */
+    private static <T> Stream<T> exec1(final Stream<T> s) {
+        final Cell<T> c = s.force();
+        return c == null ? s : c.next;
+    }
+
+    /**
+     * Force the first two cells of a schedule.
+     *
+     * @param s - schedule
+     * @return - the rest of the schedule
+     */
+    private static <T> Stream<T> exec2(final Stream<T> s) {
+        return exec1(exec1(s));
+    }
+
+    /**
+     * Lazily take the first k items of a stream.
+     *
+     * @param k - number of items
+     * @param s - source stream
+     * @return - a stream of at most k items
+     */
+    private static <T> Stream<T> take(final int k, final Stream<T> s) {
+        if (k == 0) {
+            return Stream.empty();
+        }
+        return new Stream<T>(new Thunk<T>() {
+            Cell<T> compute() {
+                final Cell<T> c = s.force();
+                return c == null ? null
+                    : new Cell<T>(c.item, take(k - 1, c.next));
+            }
+        });
+    }
+
+    /**
+     * Skip the first k items of a stream, forcing them.
+     *
+     * @param k - number of items
+     * @param s - source stream
+     * @return - the shared remainder of the stream
+     */
+    private static <T> Stream<T> drop(final int k, final Stream<T> s) {
+        Stream<T> current = s;
+        for (int i = 0; i < k; i++) {
+            final Cell<T> c = current.force();
+            if (c == null) {
+                break;
+            }
+            current = c.next;
+        }
+        return current;
+    }
+
+    /**
+     * Prepend the reversal of the first k items of a stream onto another.
+     *
+     * @param k    - number of items to reverse, or all if fewer
+     * @param s    - stream to reverse
+     * @param onto - stream to prepend onto
+     * @return - the reversed items followed by onto
+     */
+    private static <T> Stream<T> reverseOnto(final int k, final Stream<T> s,
+                                             final Stream<T> onto) {
+        Stream<T> result = onto;
+        Stream<T> current = s;
+        for (int i = 0; i < k; i++) {
+            final Cell<T> c = current.force();
+            if (c == null) {
+                break;
+            }
+            result = Stream.cons(c.item, result);
+            current = c.next;
+        }
+        return result;
+    }
+
+    /**
+     * Lazily compute f followed by the reversal of r followed by a, taking
+     * BALANCE_FACTOR items of r for each item of f.
+     *
+     * @param f - stream kept in order
+     * @param r - stream to reverse, at most BALANCE_FACTOR times as long
+     *          as f plus BALANCE_FACTOR
+     * @param a - accumulated reversed items
+     * @return - the rotated stream
+     */
+    private static <T> Stream<T> rotateRev(final Stream<T> f,
+                                           final Stream<T> r,
+                                           final Stream<T> a) {
+        return new Stream<T>(new Thunk<T>() {
+            Cell<T> compute() {
+                final Cell<T> c = f.force();
+                if (c == null) {
+                    return reverseOnto(Integer.MAX_VALUE, r, a).force();
+                }
+                return new Cell<T>(c.item, rotateRev(c.next,
+                    drop(BALANCE_FACTOR, r),
+                    reverseOnto(BALANCE_FACTOR, r, a)));
+            }
+        });
+    }
+
+    /**
+     * Lazily compute f followed by the reversal of r without its first j
+     * items.
+     *
+     * @param f - stream kept in order
+     * @param j - number of items of r to skip
+     * @param r - stream to reverse
+     * @return - the rotated stream
+     */
+    private static <T> Stream<T> rotateDrop(final Stream<T> f, final int j,
+                                            final Stream<T> r) {
+        if (j < BALANCE_FACTOR) {
+            return rotateRev(f, drop(j, r), Stream.<T>empty());
+        }
+        return new Stream<T>(new Thunk<T>() {
+            Cell<T> compute() {
+                final Cell<T> c = f.force();
+                return new Cell<T>(c.item, rotateDrop(c.next,
+                    j - BALANCE_FACTOR, drop(BALANCE_FACTOR, r)));
+            }
+        });
+    }
+
+    /**
+     * Return an iterator over items in order from front to end. The rear
+     * stream is copied into an array when the iterator reaches it, so the
+     * iterator uses extra space proportional to at most half the items.
+     *
+     * @return - new PersistentDequeIterator
+     */
+    public Iterator<T> iterator() {
+        return new PersistentDequeIterator();
+    }
+
+    /**
+     * Private class to implement the persistent deque iterator.
+     */
+    private class PersistentDequeIterator implements Iterator<T> {
+
+        /**
+         * Items of the front stream not yet returned.
+         */
+        private int frontLeft = frontSize;
+
+        /**
+         * Remaining front stream.
+         */
+        private Stream<T> current = front;
+
+        /**
+         * Rear items in front-to-end order, filled once the front is done.
+         */
+        private Object[] tailItems;
+
+        /**
+         * Next index into tailItems.
+         */
+        private int index;
+
+        /**
+         * Method to determine whether there are more items to return.
+         *
+         * @return - boolean that reflects whether an item remains.
+         */
+        public boolean hasNext() {
+            return frontLeft > 0
+                || (tailItems == null ? rearSize > 0
+                : index < tailItems.length);
+        }
+
+        /**
+         * Method that returns the next item, if there is one. Otherwise,
+         * it will throw a {@link java.util.NoSuchElementException()}
+         *
+         * @return - The next item in the deque
+         */
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new java.util.NoSuchElementException();
+            }
+            if (frontLeft > 0) {
+                final Cell<T> c = current.force();
+                frontLeft--;
+                current = c.next;
+                return c.item;
+            }
+            if (tailItems == null) {
+                tailItems = new Object[rearSize];
+                Stream<T> s = rear;
+                for (int i = rearSize - 1; i >= 0; i--) {
+                    final Cell<T> c = s.force();
+                    tailItems[i] = c.item;
+                    s = c.next;
+                }
+            }
+            return (T) tailItems[index++];
+        }
+
+        /**
+         * Do Not Call or you will get an UnsupportedOperationException.
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Private static inner class to store each forced stream cell. Cells are
+     * immutable.
+     *
+     * @param <T>
+     */
+    private static final class Cell<T> {
+
+        /**
+         * The actual item.
+         */
+        private final T item;
+
+        /**
+         * The rest of the stream.
+         */
+        private final Stream<T> next;
+
+        /**
+         * Construct a cell.
+         *
+         * @param i - the item
+         * @param n - the rest of the stream
+         */
+        private Cell(final T i, final Stream<T> n) {
+            item = i;
+            next = n;
+        }
+    }
+
+    /**
+     * Private static inner class for a suspended computation of a stream
+     * cell.
+     *
+     * @param <T>
+     */
+    private abstract static class Thunk<T> {
+
+        /**
+         * Compute the cell.
+         *
+         * @return - the first cell, or null for the empty stream
+         */
+        abstract Cell<T> compute();
+    }
+
+    /**
+     * Private static inner class for a lazy, memoized stream: a thunk until
+     * forced, then its first cell.
+     *
+     * @param <T>
+     */
+    private static final class Stream<T> {
+
+        /**
+         * Marker for a forced empty stream.
+         */
+        private static final Object NIL = new Object();
+
+        /**
+         * Shared forced empty stream.
+         */
+        @SuppressWarnings("rawtypes")
+        private static final Stream EMPTY = new Stream<Object>(NIL);
+
+        /**
+         * The Thunk while unforced, then the Cell or NIL. Replacing the
+         * thunk drops what it captured.
+         */
+        private volatile Object state;
+
+        /**
+         * Construct a stream.
+         *
+         * @param s - initial state
+         */
+        private Stream(final Object s) {
+            state = s;
+        }
+
+        /**
+         * Return the empty stream.
+         *
+         * @param <T> - generic item type
+         * @return - the shared empty stream
+         */
+        @SuppressWarnings("unchecked")
+        static <T> Stream<T> empty() {
+            return (Stream<T>) EMPTY;
+        }
+
+        /**
+         * Return a forced stream of an item followed by a stream.
+         *
+         * @param item - the first item
+         * @param rest - the rest of the stream
+         * @return - the new stream
+         */
+        static <T> Stream<T> cons(final T item, final Stream<T> rest) {
+            return new Stream<T>(new Cell<T>(item, rest));
+        }
+
+        /**
+         * Return the first cell, computing it on the first call.
+         *
+         * @return - the first cell, or null if the stream is empty
+         */
+        @SuppressWarnings("unchecked")
+        Cell<T> force() {
+            Object s = state;
+            if (s instanceof Thunk) {
+                final Cell<T> c = ((Thunk<T>) s).compute();
+                s = c == null ? NIL : c;
+                state = s;
+            }
+            return s == NIL ? null : (Cell<T>) s;
+        }
+    }
+
+    /**
+     * Convenience main method for CLI/IDE testing.
+     *
+     * @param args  - String array containing program arguments.
+     *              [Not implemented]
+     */
+    public static void main(final String... args) {
+        PersistentDeque<String> v1 = PersistentDeque.empty();
+        v1 = v1.addLast("Three blind mice. ").addLast("See how they run. ");
+        PersistentDeque<String> v2 = v1.addFirst("Once: ")
+            .addLast("They all ran after the farmer's wife. ");
+        System.out.println("v1.size() = " + v1.size());
+        for (String s : v1) {
+            System.out.println(s);
+        }
+        System.out.println("v2.size() = " + v2.size());
+        for (String s : v2) {
+            System.out.println(s);
+        }
+    }
+}
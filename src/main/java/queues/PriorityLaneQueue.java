@@ -0,0 +1,299 @@
+
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * This class implements a strict-priority queue over a small fixed number of
+ * lanes, each a FIFO {@link Queue}. Lane 0 has the highest priority and
+ * <em>dequeue</em> always serves the oldest item of the highest non-empty
+ * lane. A bitmask with one bit per non-empty lane finds that lane with a
+ * single {@link Long#numberOfTrailingZeros(long)}, so empty lanes are never
+ * scanned and every operation takes constant time.
+ * </p>
+ * <p/>
+ * <p>
+ * With aging enabled, an item that has waited at the head of its lane for
+ * longer than the aging period is moved to the tail of the lane above and
+ * waits again once it reaches the head there, so it keeps climbing until it
+ * is served and low priorities are never starved. Each lane only records
+ * when its current head reached the head. Aging is checked on each
+ * <em>dequeue</em>, only at the heads of the non-empty lanes below the one
+ * being served, and costs one comparison per such lane plus constant time
+ * per promotion.
+ * </p>
+ * <p/>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null item;
+ * throw an IllegalArgumentException for a priority outside the lanes; throw
+ * a java.util.NoSuchElementException if the client attempts to dequeue from
+ * an empty queue.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class PriorityLaneQueue<T> {
+
+    /**
+     * Most lanes a queue can have: one per bit of the mask.
+     */
+    public static final int MAX_LANES = 64;
+
+    /**
+     * Nodes kept for reuse by each lane.
+     */
+    private static final int RECYCLED_NODES = 64;
+
+    /**
+     * The lanes, highest priority first.
+     */
+    private final Lane<T>[] lanes;
+
+    /**
+     * Bit i is set while lane i is non-empty.
+     */
+    private long nonEmpty;
+
+    /**
+     * Nanoseconds at the head of a lane before promotion; 0 disables aging.
+     */
+    private final long agingPeriod;
+
+    /**
+     * Total number of items.
+     */
+    private int size;
+
+    /**
+     * Total number of promotions.
+     */
+    private long promotions;
+
+    /**
+     * Construct an empty queue without aging.
+     *
+     * @param n - number of lanes, 1 to MAX_LANES
+     */
+    public PriorityLaneQueue(final int n) {
+        this(n, 0);
+    }
+
+    /**
+     * Construct an empty queue.
+     *
+     * @param n     - number of lanes, 1 to MAX_LANES
+     * @param aging - nanoseconds an item may wait at the head of its lane
+     *              before moving up a lane; 0 disables aging
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityLaneQueue(final int n, final long aging) {
+        if (n < 1 || n > MAX_LANES) {
+            throw new IllegalArgumentException(
+                "lanes must be between 1 and " + MAX_LANES + ": " + n);
+        }
+        if (aging < 0) {
+            throw new IllegalArgumentException(
+                "aging period must be >= 0: " + aging);
+        }
+        lanes = (Lane<T>[]) new Lane<?>[n];
+        for (int i = 0; i < n; i++) {
+            lanes[i] = new Lane<T>();
+        }
+        agingPeriod = aging;
+    }
+
+    /**
+     * Add an item at the tail of a lane.
+     *
+     * @param item     - generic object
+     * @param priority - lane, 0 for the highest priority
+     */
+    public final void enqueue(final T item, final int priority) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (priority < 0 || priority >= lanes.length) {
+            throw new IllegalArgumentException("priority must be between 0"
+                + " and " + (lanes.length - 1) + ": " + priority);
+        }
+        lanes[priority].add(item, agingPeriod > 0 ? System.nanoTime() : 0);
+        nonEmpty |= 1L << priority;
+        size++;
+    }
+
+    /**
+     * Remove and return the oldest item of the highest non-empty lane, after
+     * promoting items that have waited longer than the aging period.
+     *
+     * @return - the item
+     */
+    public final T dequeue() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        final long now = agingPeriod > 0 ? System.nanoTime() : 0;
+        if (agingPeriod > 0) {
+            age(now);
+        }
+        final int lane = Long.numberOfTrailingZeros(nonEmpty);
+        final Lane<T> l = lanes[lane];
+        final T item = l.remove(now);
+        if (l.items.isEmpty()) {
+            nonEmpty &= ~(1L << lane);
+        }
+        size--;
+        return item;
+    }
+
+    /**
+     * Return (but do not delete) the item dequeue would return if no item
+     * were promoted first.
+     *
+     * @return - the oldest item of the highest non-empty lane
+     */
+    public final T peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return lanes[Long.numberOfTrailingZeros(nonEmpty)].items.peek();
+    }
+
+    /**
+     * Priority of the highest non-empty lane.
+     *
+     * @return int - the lane, or -1 if the queue is empty
+     */
+    public final int highestPriority() {
+        return size == 0 ? -1 : Long.numberOfTrailingZeros(nonEmpty);
+    }
+
+    /**
+     * Is the queue empty?
+     *
+     * @return boolean that reflects whether the queue is empty or not.
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Method that acts as getter for size of queue.
+     *
+     * @return int - the number of items in all lanes
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Number of items in one lane.
+     *
+     * @param priority - the lane
+     * @return int - the lane's size
+     */
+    public final int size(final int priority) {
+        return lanes[priority].items.size();
+    }
+
+    /**
+     * Number of lanes.
+     *
+     * @return int - the number of priorities
+     */
+    public final int lanes() {
+        return lanes.length;
+    }
+
+    /**
+     * Total number of times an item moved up a lane.
+     *
+     * @return long - the number of promotions
+     */
+    public final long promotions() {
+        return promotions;
+    }
+
+    /**
+     * Promote every lane head that has waited longer than the aging period,
+     * visiting the non-empty lanes below the highest from the top down so an
+     * item moves at most one lane per call.
+     *
+     * @param now - current time
+     */
+    private void age(final long now) {
+        final long deadline = now - agingPeriod;
+        // Clearing the lowest bit skips the highest non-empty lane, which
+        // is served next anyway; this also skips lane 0.
+        long pending = nonEmpty & (nonEmpty - 1);
+        while (pending != 0) {
+            final int lane = Long.numberOfTrailingZeros(pending);
+            pending &= pending - 1;
+            final Lane<T> from = lanes[lane];
+            final Lane<T> to = lanes[lane - 1];
+            boolean moved = false;
+            while (!from.items.isEmpty() && from.headTime() - deadline < 0) {
+                to.add(from.remove(now), now);
+                promotions++;
+                moved = true;
+            }
+            if (moved) {
+                nonEmpty |= 1L << (lane - 1);
+                if (from.items.isEmpty()) {
+                    nonEmpty &= ~(1L << lane);
+                }
+            }
+        }
+    }
+
+    /**
+     * Private static class holding one lane's items and the time its head
+     * item reached the head.
+     *
+     * @param <T> - generic item type
+     */
+    private static final class Lane<T> {
+
+        /**
+         * Items in FIFO order.
+         */
+        private final Queue<T> items = new Queue<T>(RECYCLED_NODES);
+
+        /**
+         * Time the first item reached the head of the lane.
+         */
+        private long headTime;
+
+        /**
+         * Append an item.
+         *
+         * @param item - the item
+         * @param time - System.nanoTime() when aging, otherwise unused
+         */
+        void add(final T item, final long time) {
+            if (items.isEmpty()) {
+                headTime = time;
+            }
+            items.enqueue(item);
+        }
+
+        /**
+         * Time the first item reached the head of the lane.
+         *
+         * @return - nanoTime of the head item
+         */
+        long headTime() {
+            return headTime;
+        }
+
+        /**
+         * Remove the first item; the next one reaches the head.
+         *
+         * @param time - System.nanoTime() when aging, otherwise unused
+         * @return - the item
+         */
+        T remove(final long time) {
+            final T item = items.dequeue();
+            headTime = time;
+            return item;
+        }
+    }
+}
@@ -1,4 +1,7 @@
 
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -15,6 +18,11 @@ import java.util.NoSuchElementException;
  * The <em>enqueue</em>, <em>dequeue</em>, <em>peek</em>, <em>size</em>, and
  * <em>is-empty</em> operations all take constant time in the worst case.
  * <p/>
+ * Dequeued nodes are cleared so they do not retain items. A queue built with
+ * {@link #Queue(int)} also keeps a bounded free-list of those nodes and reuses
+ * them on <em>enqueue</em>; as with any structural change, dequeuing while an
+ * iterator is in use gives undefined iteration results.
+ * <p/>
  * For additional documentation, see
  * <a href="http://algs4.cs.princeton.edu/13stacks">Section 1.3</a> of
  * <i>Algorithms, 4th Edition</i> by Robert Sedgewick and Kevin Wayne.
@@ -43,6 +51,21 @@ public class Queue<T> implements Iterable<T> {
      */
     private Node<T> last;
 
+    /**
+     * Maximum number of removed nodes kept for reuse.
+     */
+    private final int recycleLimit;
+
+    /**
+     * Head of the free-list of recycled nodes, linked through next.
+     */
+    private Node<T> recycled;
+
+    /**
+     * Number of nodes currently on the free-list.
+     */
+    private int numRecycled;
+
     /**
      * Private static helper for linked list class.
      *
@@ -66,9 +89,26 @@ public class Queue<T> implements Iterable<T> {
      * Initializes an empty queue.
      */
     public Queue() {
+        this(0);
+    }
+
+    /**
+     * Initializes an empty queue that keeps up to the given number of
+     * dequeued nodes on a free-list and reuses them on later enqueues, so a
+     * queue whose size stays roughly constant allocates no new nodes.
+     *
+     * @param maxRecycled - maximum number of nodes kept for reuse; 0 disables
+     *                    recycling.
+     */
+    public Queue(final int maxRecycled) {
+        if (maxRecycled < 0) {
+            throw new IllegalArgumentException(
+                "maxRecycled must be >= 0: " + maxRecycled);
+        }
         first = null;
         last = null;
         num = 0;
+        recycleLimit = maxRecycled;
     }
 
     /**
@@ -111,7 +151,7 @@ public class Queue<T> implements Iterable<T> {
      */
     public final void enqueue(final T item) {
         Node<T> swap = last;
-        last = new Node<T>();
+        last = newNode();
         last.item = item;
         last.next = null;
         if (isEmpty()) {
@@ -134,15 +174,79 @@ public class Queue<T> implements Iterable<T> {
             throw new NoSuchElementException(
                 "edu.princeton.algos.queue.Queue underflow");
         }
-        T t = first.item;
-        first = first.next;
+        final Node<T> old = first;
+        T t = old.item;
+        first = old.next;
         num--;
         if (isEmpty()) {
             last = null;
         }
+        recycle(old);
         return t;
     }
 
+    /**
+     * Returns a node from the free-list, or a new one if the list is empty.
+     *
+     * @return - an empty node ready for linking
+     */
+    private Node<T> newNode() {
+        final Node<T> node = recycled;
+        if (node == null) {
+            return new Node<T>();
+        }
+        recycled = node.next;
+        node.next = null;
+        numRecycled--;
+        return node;
+    }
+
+    /**
+     * Clears a removed node and pushes it on the free-list if there is room.
+     *
+     * @param node - node that has just been unlinked from the queue
+     */
+    private void recycle(final Node<T> node) {
+        node.item = null;
+        if (numRecycled < recycleLimit) {
+            node.next = recycled;
+            recycled = node;
+            numRecycled++;
+        } else {
+            node.next = null;
+        }
+    }
+
+    /**
+     * Writes the items of this queue in FIFO order to a channel in the
+     * compact block format of {@link QueueSerializer}.
+     *
+     * @param channel - destination channel
+     * @param codec   - codec used to encode each item
+     * @throws IOException - if the channel fails
+     */
+    public final void writeTo(final WritableByteChannel channel,
+                              final ElementCodec<? super T> codec)
+        throws IOException {
+        QueueSerializer.write(this, num, codec, channel);
+    }
+
+    /**
+     * Reads a queue written by {@link #writeTo(WritableByteChannel,
+     * ElementCodec)}.
+     *
+     * @param channel - source channel
+     * @param codec   - codec used to decode each item
+     * @param <T>     - generic item type
+     * @return a new queue holding the items in their original order
+     * @throws IOException - if the channel fails or the data is corrupt
+     */
+    public static <T> Queue<T> readFrom(final ReadableByteChannel channel,
+                                        final ElementCodec<T> codec)
+        throws IOException {
+        return QueueSerializer.readQueue(channel, codec);
+    }
+
     /**
      * Returns a string representation of this queue.
      *
@@ -0,0 +1,579 @@
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * This class implements a load generator for the queue implementations in
+ * this project. It runs producer, consumer and mixed worker threads against
+ * one shared instance for a fixed duration, records the latency of every
+ * put and take in a {@link LatencyHistogram} per thread, and reports count,
+ * throughput and p50/p99/p99.9/max latency per operation as text or JSON.
+ * </p>
+ * <p/>
+ * <p>
+ * Implementations that are not thread-safe are guarded by a single lock.
+ * With {@code --rate} each thread issues operations on a fixed schedule and
+ * latency is measured from the time an operation was due rather than from
+ * when it started, so stalls are charged to every operation they delayed
+ * (coordinated-omission correction). Without it, threads run flat out and
+ * latencies are plain service times.
+ * </p>
+ * <p/>
+ * <p>
+ * A put is refused, and counted as a full put, while the structure holds
+ * {@code --capacity} items, so producers that outrun the consumers do not
+ * grow the backlog without bound. The warmup runs against its own instance
+ * and the measured run starts from an empty one.
+ * </p>
+ * <p/>
+ * <pre>
+ * {@code
+ * java QueueLoadTest --impl queue|deque|randomized|flat-combining
+ *                    [--producers 1] [--consumers 1] [--mixed 0]
+ *                    [--put-ratio 0.5] [--item-size 64] [--duration 10]
+ *                    [--warmup 1] [--rate 0] [--capacity 65536]
+ *                    [--format text|json]
+ * }
+ * </pre>
+ */
+public final class QueueLoadTest {
+
+    /**
+     * Payload arrays each thread cycles through, so puts do not allocate.
+     */
+    private static final int PAYLOADS = 1024;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS = 1e9;
+
+    /**
+     * No argument constructor made private to avoid instantiation.
+     */
+    private QueueLoadTest() {
+    }
+
+    /**
+     * Thread-safe view of the implementation under test.
+     */
+    private interface Target {
+
+        /**
+         * Add an item unless the structure is at capacity.
+         *
+         * @param item - the item
+         * @return - false if the structure was full
+         */
+        boolean put(Object item);
+
+        /**
+         * Remove an item.
+         *
+         * @return - an item, or null if the structure was empty
+         */
+        Object take();
+    }
+
+    /**
+     * Run the load test described by the arguments.
+     *
+     * @param args - options; see the class comment
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final Options o;
+        try {
+            o = new Options(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: QueueLoadTest --impl queue|deque|"
+                + "randomized|flat-combining [--producers N] [--consumers N]"
+                + " [--mixed N] [--put-ratio P] [--item-size BYTES]"
+                + " [--duration SECONDS] [--warmup SECONDS]"
+                + " [--rate OPS_PER_SECOND_PER_THREAD] [--capacity ITEMS]"
+                + " [--format text|json]");
+            System.exit(2);
+            return;
+        }
+        if (o.warmup > 0) {
+            run(o, target(o.impl, o.capacity), o.warmup);
+        }
+        final Result result = run(o, target(o.impl, o.capacity), o.duration);
+        System.out.println("json".equals(o.format) ? result.json(o)
+            : result.text(o));
+    }
+
+    /**
+     * Build a target around a new, empty instance of an implementation.
+     *
+     * @param impl     - implementation name
+     * @param capacity - most items the target accepts
+     * @return - a thread-safe target
+     */
+    private static Target target(final String impl, final int capacity) {
+        if ("queue".equals(impl)) {
+            final Queue<Object> q = new Queue<Object>(1024);
+            return new Target() {
+                public synchronized boolean put(final Object item) {
+                    if (q.size() >= capacity) {
+                        return false;
+                    }
+                    q.enqueue(item);
+                    return true;
+                }
+
+                public synchronized Object take() {
+                    return q.isEmpty() ? null : q.dequeue();
+                }
+            };
+        }
+        if ("deque".equals(impl)) {
+            final Deque<Object> d = new Deque<Object>(1024);
+            return new Target() {
+                public synchronized boolean put(final Object item) {
+                    if (d.size() >= capacity) {
+                        return false;
+                    }
+                    d.addLast(item);
+                    return true;
+                }
+
+                public synchronized Object take() {
+                    return d.isEmpty() ? null : d.removeFirst();
+                }
+            };
+        }
+        if ("randomized".equals(impl)) {
+            final RandomizedQueue<Object> r = new RandomizedQueue<Object>();
+            return new Target() {
+                public synchronized boolean put(final Object item) {
+                    if (r.size() >= capacity) {
+                        return false;
+                    }
+                    r.enqueue(item);
+                    return true;
+                }
+
+                public synchronized Object take() {
+                    return r.isEmpty() ? null : r.dequeue();
+                }
+            };
+        }
+        if ("flat-combining".equals(impl)) {
+            final FlatCombiningDeque<Object> f =
+                new FlatCombiningDeque<Object>();
+            return new Target() {
+                public boolean put(final Object item) {
+                    // size() is as of the last combining pass, so the bound
+                    // may be overshot by one item per producer.
+                    if (f.size() >= capacity) {
+                        return false;
+                    }
+                    f.addLast(item);
+                    return true;
+                }
+
+                public Object take() {
+                    return f.pollFirst();
+                }
+            };
+        }
+        throw new IllegalArgumentException("unknown --impl " + impl);
+    }
+
+    /**
+     * Run every worker for the given time and merge their histograms.
+     *
+     * @param o       - options
+     * @param target  - implementation under test
+     * @param seconds - run time
+     * @return - the merged result
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    private static Result run(final Options o, final Target target,
+                              final double seconds)
+        throws InterruptedException {
+        final List<Worker> workers = new ArrayList<Worker>();
+        for (int i = 0; i < o.producers; i++) {
+            workers.add(new Worker(o, target, 1.0));
+        }
+        for (int i = 0; i < o.consumers; i++) {
+            workers.add(new Worker(o, target, 0.0));
+        }
+        for (int i = 0; i < o.mixed; i++) {
+            workers.add(new Worker(o, target, o.putRatio));
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final long begin = System.nanoTime();
+        final long end = begin + (long) (seconds * NANOS);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (final Worker w : workers) {
+            final Thread t = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    w.runUntil(end);
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        final Result result = new Result(System.nanoTime() - begin);
+        for (Worker w : workers) {
+            result.puts.add(w.puts);
+            result.takes.add(w.takes);
+            result.emptyTakes += w.emptyTakes;
+            result.fullPuts += w.fullPuts;
+        }
+        return result;
+    }
+
+    /**
+     * Private static class for one load-generating thread.
+     */
+    private static final class Worker {
+
+        /**
+         * Implementation under test.
+         */
+        private final Target target;
+
+        /**
+         * Probability that an operation is a put.
+         */
+        private final double putRatio;
+
+        /**
+         * Nanoseconds between scheduled operations, or 0 to run flat out.
+         */
+        private final long period;
+
+        /**
+         * Payloads cycled through by puts.
+         */
+        private final byte[][] payloads;
+
+        /**
+         * Latencies of puts.
+         */
+        private final LatencyHistogram puts = new LatencyHistogram();
+
+        /**
+         * Latencies of takes.
+         */
+        private final LatencyHistogram takes = new LatencyHistogram();
+
+        /**
+         * Takes that found the structure empty.
+         */
+        private long emptyTakes;
+
+        /**
+         * Puts refused because the structure was full.
+         */
+        private long fullPuts;
+
+        /**
+         * Construct a worker.
+         *
+         * @param o - options
+         * @param t - implementation under test
+         * @param p - probability that an operation is a put
+         */
+        Worker(final Options o, final Target t, final double p) {
+            target = t;
+            putRatio = p;
+            period = o.rate > 0 ? (long) (NANOS / o.rate) : 0;
+            payloads = new byte[PAYLOADS][o.itemSize];
+        }
+
+        /**
+         * Issue operations until the deadline.
+         *
+         * @param end - System.nanoTime() deadline
+         */
+        void runUntil(final long end) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            long due = System.nanoTime();
+            int next = 0;
+            while (true) {
+                long now = System.nanoTime();
+                if (now >= end) {
+                    return;
+                }
+                if (period > 0) {
+                    while (now < due) {
+                        LockSupport.parkNanos(due - now);
+                        now = System.nanoTime();
+                    }
+                } else {
+                    due = now;
+                }
+                final boolean put = putRatio >= 1.0
+                    || (putRatio > 0.0 && random.nextDouble() < putRatio);
+                if (put) {
+                    if (target.put(payloads[next])) {
+                        next = (next + 1) % PAYLOADS;
+                    } else {
+                        fullPuts++;
+                    }
+                    puts.record(System.nanoTime() - due);
+                } else {
+                    if (target.take() == null) {
+                        emptyTakes++;
+                    }
+                    takes.record(System.nanoTime() - due);
+                }
+                due += period;
+            }
+        }
+    }
+
+    /**
+     * Private static class for the merged measurements of one run.
+     */
+    private static final class Result {
+
+        /**
+         * Wall-clock length of the run in nanoseconds.
+         */
+        private final long elapsed;
+
+        /**
+         * Latencies of all puts.
+         */
+        private final LatencyHistogram puts = new LatencyHistogram();
+
+        /**
+         * Latencies of all takes.
+         */
+        private final LatencyHistogram takes = new LatencyHistogram();
+
+        /**
+         * Takes that found the structure empty.
+         */
+        private long emptyTakes;
+
+        /**
+         * Puts refused because the structure was full.
+         */
+        private long fullPuts;
+
+        /**
+         * Construct an empty result.
+         *
+         * @param e - length of the run in nanoseconds
+         */
+        Result(final long e) {
+            elapsed = e;
+        }
+
+        /**
+         * Format as a human-readable table, latencies in microseconds.
+         *
+         * @param o - options of the run
+         * @return - the report
+         */
+        String text(final Options o) {
+            final StringBuilder s = new StringBuilder();
+            s.append(String.format(Locale.ROOT, "impl=%s producers=%d "
+                    + "consumers=%d mixed=%d put-ratio=%.2f item-size=%d "
+                    + "capacity=%d duration=%.1fs rate=%s%n", o.impl,
+                o.producers, o.consumers, o.mixed, o.putRatio, o.itemSize,
+                o.capacity, elapsed / NANOS, o.rate > 0 ? o.rate + "/s/thread"
+                    + " (latency from scheduled start)" : "unthrottled"));
+            s.append(String.format(Locale.ROOT,
+                "%-5s %12s %12s %10s %10s %10s %10s%n", "op", "count",
+                "ops/s", "p50 us", "p99 us", "p99.9 us", "max us"));
+            row(s, "put", puts);
+            row(s, "take", takes);
+            s.append("empty takes: ").append(emptyTakes)
+                .append(" full puts: ").append(fullPuts);
+            return s.toString();
+        }
+
+        /**
+         * Append one table row.
+         *
+         * @param s    - destination
+         * @param name - operation name
+         * @param h    - its latencies
+         */
+        private void row(final StringBuilder s, final String name,
+                         final LatencyHistogram h) {
+            s.append(String.format(Locale.ROOT,
+                "%-5s %12d %12.0f %10.2f %10.2f %10.2f %10.2f%n", name,
+                h.count(), h.count() * NANOS / elapsed,
+                h.percentile(50) / 1e3, h.percentile(99) / 1e3,
+                h.percentile(99.9) / 1e3, h.max() / 1e3));
+        }
+
+        /**
+         * Format as a JSON object, latencies in nanoseconds.
+         *
+         * @param o - options of the run
+         * @return - the report
+         */
+        String json(final Options o) {
+            return String.format(Locale.ROOT, "{\"impl\":\"%s\","
+                    + "\"producers\":%d,\"consumers\":%d,\"mixed\":%d,"
+                    + "\"putRatio\":%s,\"itemSize\":%d,\"rate\":%s,"
+                    + "\"capacity\":%d,\"elapsedNanos\":%d,"
+                    + "\"emptyTakes\":%d,\"fullPuts\":%d,"
+                    + "\"put\":%s,\"take\":%s}", o.impl, o.producers,
+                o.consumers, o.mixed, o.putRatio, o.itemSize, o.rate,
+                o.capacity, elapsed, emptyTakes, fullPuts, json(puts),
+                json(takes));
+        }
+
+        /**
+         * Format one histogram as a JSON object.
+         *
+         * @param h - latencies
+         * @return - the JSON text
+         */
+        private String json(final LatencyHistogram h) {
+            return String.format(Locale.ROOT, "{\"count\":%d,"
+                    + "\"opsPerSecond\":%.1f,\"p50\":%d,\"p99\":%d,"
+                    + "\"p999\":%d,\"max\":%d}", h.count(),
+                h.count() * NANOS / elapsed, h.percentile(50),
+                h.percentile(99), h.percentile(99.9), h.max());
+        }
+    }
+
+    /**
+     * Private static class for the parsed command-line options.
+     */
+    private static final class Options {
+
+        /**
+         * Implementation name.
+         */
+        private String impl;
+
+        /**
+         * Number of put-only threads.
+         */
+        private int producers = 1;
+
+        /**
+         * Number of take-only threads.
+         */
+        private int consumers = 1;
+
+        /**
+         * Number of threads mixing puts and takes.
+         */
+        private int mixed;
+
+        /**
+         * Probability that a mixed thread's operation is a put.
+         */
+        private double putRatio = 0.5;
+
+        /**
+         * Payload size in bytes.
+         */
+        private int itemSize = 64;
+
+        /**
+         * Measured run length in seconds.
+         */
+        private double duration = 10;
+
+        /**
+         * Unmeasured run length in seconds before the measured run.
+         */
+        private double warmup = 1;
+
+        /**
+         * Operations per second per thread, or 0 for unthrottled.
+         */
+        private double rate;
+
+        /**
+         * Most items the structure may hold; further puts are refused.
+         */
+        private int capacity = 1 << 16;
+
+        /**
+         * Output format, text or json.
+         */
+        private String format = "text";
+
+        /**
+         * Parse "--name value" pairs.
+         *
+         * @param args - command-line arguments
+         */
+        Options(final String[] args) {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(
+                        "missing value for " + args[i]);
+                }
+                final String v = args[i + 1];
+                try {
+                    if ("--impl".equals(args[i])) {
+                        impl = v;
+                    } else if ("--producers".equals(args[i])) {
+                        producers = Integer.parseInt(v);
+                    } else if ("--consumers".equals(args[i])) {
+                        consumers = Integer.parseInt(v);
+                    } else if ("--mixed".equals(args[i])) {
+                        mixed = Integer.parseInt(v);
+                    } else if ("--put-ratio".equals(args[i])) {
+                        putRatio = Double.parseDouble(v);
+                    } else if ("--item-size".equals(args[i])) {
+                        itemSize = Integer.parseInt(v);
+                    } else if ("--duration".equals(args[i])) {
+                        duration = Double.parseDouble(v);
+                    } else if ("--warmup".equals(args[i])) {
+                        warmup = Double.parseDouble(v);
+                    } else if ("--rate".equals(args[i])) {
+                        rate = Double.parseDouble(v);
+                    } else if ("--capacity".equals(args[i])) {
+                        capacity = Integer.parseInt(v);
+                    } else if ("--format".equals(args[i])) {
+                        format = v;
+                    } else {
+                        throw new IllegalArgumentException(
+                            "unknown option " + args[i]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(
+                        "bad number for " + args[i] + ": " + v);
+                }
+            }
+            if (impl == null) {
+                throw new IllegalArgumentException("--impl is required");
+            }
+            if (producers < 0 || consumers < 0 || mixed < 0
+                || producers + consumers + mixed == 0) {
+                throw new IllegalArgumentException("need at least one thread");
+            }
+            if (putRatio < 0 || putRatio > 1 || itemSize < 0 || duration <= 0
+                || warmup < 0 || rate < 0 || capacity < 1) {
+                throw new IllegalArgumentException("option out of range");
+            }
+            if (!"text".equals(format) && !"json".equals(format)) {
+                throw new IllegalArgumentException("unknown --format "
+                    + format);
+            }
+            target(impl, capacity);
+        }
+    }
+}
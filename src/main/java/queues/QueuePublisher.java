@@ -0,0 +1,344 @@
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * This class implements a {@link Flow.Publisher} fed through a {@link Deque}.
+ * Producers call {@link #offer(Object)}; items are delivered to the single
+ * subscriber in FIFO order, in batches of at most the subscriber's
+ * outstanding demand, on the given executor. An offer, a request or a close
+ * schedules a drain only when there is something to do, so an idle publisher
+ * uses no threads and a busy one delivers without polling delay.
+ * </p>
+ * <p/>
+ * <p>
+ * Only one subscriber is accepted; a second one is sent onError with an
+ * IllegalStateException. Items offered before the subscriber arrives are
+ * buffered. After {@link #close()} further offers throw an
+ * IllegalStateException, and the subscriber receives onComplete once the
+ * buffered items have been delivered. If the executor rejects the drain
+ * loop, the subscriber receives onError with the
+ * RejectedExecutionException.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class QueuePublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * Default maximum number of items taken from the queue at once.
+     */
+    private static final int DEFAULT_MAX_BATCH = 256;
+
+    /**
+     * Buffered items, oldest first; guarded by its own monitor.
+     */
+    private final Deque<T> queue = new Deque<T>(DEFAULT_MAX_BATCH);
+
+    /**
+     * Executor the drain loop runs on.
+     */
+    private final Executor executor;
+
+    /**
+     * Items taken from the queue in one batch; used only by the drain loop.
+     */
+    private final Object[] batch;
+
+    /**
+     * Number of drain requests not yet handled by the drain loop.
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /**
+     * The single subscription, once a subscriber has arrived.
+     */
+    private final AtomicReference<QueueSubscription> subscription =
+        new AtomicReference<QueueSubscription>();
+
+    /**
+     * Set by close(); guarded by the queue's monitor.
+     */
+    private boolean closed;
+
+    /**
+     * Construct a publisher that drains on the common fork/join pool.
+     */
+    public QueuePublisher() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Construct a publisher.
+     *
+     * @param e        - executor the drain loop runs on
+     * @param maxBatch - maximum number of items taken from the queue at once
+     */
+    public QueuePublisher(final Executor e, final int maxBatch) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException(
+                "maxBatch must be >= 1: " + maxBatch);
+        }
+        executor = e;
+        batch = new Object[maxBatch];
+    }
+
+    /**
+     * Add an item to be published.
+     *
+     * @param item - the item
+     */
+    public final void offer(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        synchronized (queue) {
+            if (closed) {
+                throw new IllegalStateException("publisher closed");
+            }
+            queue.addLast(item);
+        }
+        drain();
+    }
+
+    /**
+     * Stop accepting items; the subscriber completes once the buffered
+     * items have been delivered.
+     */
+    public final void close() {
+        synchronized (queue) {
+            closed = true;
+        }
+        drain();
+    }
+
+    /**
+     * Number of items buffered and not yet delivered.
+     *
+     * @return - int containing the number of buffered items
+     */
+    public final int size() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Attach the subscriber.
+     *
+     * @param subscriber - the subscriber
+     */
+    public final void subscribe(final Flow.Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        final QueueSubscription s = new QueueSubscription(subscriber);
+        if (!subscription.compareAndSet(null, s)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(final long n) {
+                }
+
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                "QueuePublisher supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(s);
+        drain();
+    }
+
+    /**
+     * Schedule the drain loop unless it is already scheduled or running;
+     * in that case the loop is told to go round once more. If the executor
+     * rejects the loop, the subscriber fails with the rejection, or the
+     * caller gets it if there is no subscriber yet.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() == 0) {
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        drainLoop();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                final QueueSubscription s = subscription.get();
+                // No loop is running, so the failure can be signalled here;
+                // done is set first so a loop scheduled later stays quiet.
+                final boolean fail = s != null && !s.done;
+                if (fail) {
+                    s.done = true;
+                }
+                wip.set(0);
+                if (s == null) {
+                    throw e;
+                }
+                if (fail) {
+                    s.subscriber.onError(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deliver batches while there is demand and items, then complete if
+     * closed and empty. Runs on at most one thread at a time.
+     */
+    @SuppressWarnings("unchecked")
+    private void drainLoop() {
+        int missed = 1;
+        while (true) {
+            final QueueSubscription s = subscription.get();
+            if (s != null && !s.done) {
+                while (!s.done && s.error == null) {
+                    final long requested = s.requested.get();
+                    if (requested == 0) {
+                        break;
+                    }
+                    int n = 0;
+                    synchronized (queue) {
+                        final int max = (int) Math.min(requested,
+                            Math.min(batch.length, queue.size()));
+                        while (n < max) {
+                            batch[n++] = queue.removeFirst();
+                        }
+                    }
+                    if (n == 0) {
+                        break;
+                    }
+                    int sent = 0;
+                    try {
+                        while (sent < n && !s.done && s.error == null) {
+                            s.subscriber.onNext((T) batch[sent++]);
+                        }
+                    } catch (RuntimeException e) {
+                        s.done = true;
+                        s.subscriber.onError(e);
+                    } finally {
+                        if (sent < n) {
+                            requeue(sent, n);
+                        }
+                        java.util.Arrays.fill(batch, 0, n, null);
+                    }
+                    if (requested != Long.MAX_VALUE) {
+                        s.requested.addAndGet(-sent);
+                    }
+                }
+                if (s.error != null && !s.done) {
+                    s.done = true;
+                    s.subscriber.onError(s.error);
+                }
+                final boolean complete;
+                synchronized (queue) {
+                    complete = closed && queue.isEmpty();
+                }
+                if (complete && !s.done) {
+                    s.done = true;
+                    s.subscriber.onComplete();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Put the unsent part of the batch back at the head of the queue, in
+     * order, so that a cancel or failure during a batch loses no items.
+     *
+     * @param from - index of the first unsent item in batch
+     * @param to   - index past the last item in batch
+     */
+    @SuppressWarnings("unchecked")
+    private void requeue(final int from, final int to) {
+        synchronized (queue) {
+            for (int i = to - 1; i >= from; i--) {
+                queue.addFirst((T) batch[i]);
+            }
+        }
+    }
+
+    /**
+     * Private class that holds the demand of the subscriber.
+     */
+    private final class QueueSubscription implements Flow.Subscription {
+
+        /**
+         * The subscriber.
+         */
+        private final Flow.Subscriber<? super T> subscriber;
+
+        /**
+         * Outstanding demand; Long.MAX_VALUE means unbounded.
+         */
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * Set once cancelled, completed or failed.
+         */
+        private volatile boolean done;
+
+        /**
+         * Error to deliver from the drain loop, set by an invalid request.
+         */
+        private volatile Throwable error;
+
+        /**
+         * Construct a subscription.
+         *
+         * @param s - the subscriber
+         */
+        QueueSubscription(final Flow.Subscriber<? super T> s) {
+            subscriber = s;
+        }
+
+        /**
+         * Add demand and wake the drain loop. An invalid request is
+         * reported through onError by the drain loop, so that it cannot
+         * overlap an onNext.
+         *
+         * @param n - number of additional items wanted, greater than 0
+         */
+        public void request(final long n) {
+            if (n <= 0) {
+                if (error == null) {
+                    error = new IllegalArgumentException(
+                        "request must be > 0: " + n);
+                }
+                drain();
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        /**
+         * Stop delivery; buffered items, including any of the current batch
+         * that were not yet sent, stay in the publisher.
+         */
+        public void cancel() {
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * This class implements a compact binary format for the contents of a
+ * {@link Queue} or {@link Deque}, written to and read from NIO channels.
+ * </p>
+ * <p/>
+ * <p>
+ * A stream starts with a 20 byte header (magic, version, item count, CRC32
+ * of those 16 bytes) and is followed by checksummed blocks. Each block has a
+ * 16 byte header (payload length, item count, CRC32 of the payload, CRC32 of
+ * the first 12 header bytes) and a payload of up to {@link #BLOCK_SIZE}
+ * bytes holding, for each item, its encoded length as an unsigned varint
+ * followed by the bytes produced by the {@link ElementCodec}. A block is
+ * only ever larger than {@link #BLOCK_SIZE} when it holds a single item that
+ * does not fit in one, and never larger than {@link #MAX_BLOCK_SIZE}. Each
+ * block is handed to the channel in one write, so the number of channel
+ * calls is proportional to the size of the data rather than the number of
+ * items.
+ * </p>
+ * <p/>
+ * <p>
+ * Reading throws an IOException if the stream ends early, a header is not
+ * recognised or fails its checksum, a block is larger than the writer could
+ * have produced, or a block fails its checksum or holds bytes beyond its
+ * items. Headers are verified before anything is allocated for the blocks
+ * they describe.
+ * </p>
+ */
+public final class QueueSerializer {
+
+    /**
+     * First four bytes of every stream ("QUEU").
+     */
+    private static final int MAGIC = 0x51554555;
+
+    /**
+     * Format version written by this class.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Size in bytes of the stream header.
+     */
+    private static final int STREAM_HEADER = 20;
+
+    /**
+     * Size in bytes of each block header.
+     */
+    private static final int BLOCK_HEADER = 16;
+
+    /**
+     * Target payload size of a block.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Largest payload of a block holding a single oversized item: 16 MiB.
+     */
+    public static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * No argument constructor made private to avoid instantiation.
+     */
+    private QueueSerializer() {
+    }
+
+    /**
+     * Write items to a channel.
+     *
+     * @param items   - the items, in the order they should be read back
+     * @param count   - the number of items the iterable returns
+     * @param codec   - codec used to encode each item
+     * @param channel - destination channel
+     * @param <T>     - generic item type
+     * @throws IOException - if the channel fails
+     * @throws NullPointerException - if an item is null
+     * @throws IllegalArgumentException - if an item encodes to more than
+     *                                  MAX_BLOCK_SIZE bytes with its length
+     */
+    public static <T> void write(final Iterable<? extends T> items,
+                                 final int count,
+                                 final ElementCodec<? super T> codec,
+                                 final WritableByteChannel channel)
+        throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer header = ByteBuffer.allocate(STREAM_HEADER);
+        header.putInt(MAGIC).putInt(VERSION).putLong(count);
+        crc.update(header.array(), 0, STREAM_HEADER - 4);
+        header.putInt((int) crc.getValue());
+        header.flip();
+        writeFully(channel, header);
+
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER + BLOCK_SIZE);
+        block.position(BLOCK_HEADER);
+        int inBlock = 0;
+        int written = 0;
+        for (T item : items) {
+            if (item == null) {
+                throw new NullPointerException("null item at position "
+                    + written);
+            }
+            final int length = codec.encodedLength(item);
+            final int needed = varIntSize(length) + length;
+            if (needed > MAX_BLOCK_SIZE) {
+                throw new IllegalArgumentException("item encodes to "
+                    + length + " bytes, more than a block can hold");
+            }
+            if (block.remaining() < needed && inBlock > 0) {
+                flushBlock(channel, block, inBlock, crc);
+                inBlock = 0;
+            }
+            // A block holding an item too large for BLOCK_SIZE is sized for
+            // that item alone, and the next block is back to BLOCK_SIZE.
+            final int capacity = BLOCK_HEADER + Math.max(BLOCK_SIZE, needed);
+            if (inBlock == 0 && block.capacity() != capacity) {
+                block = ByteBuffer.allocate(capacity);
+                block.position(BLOCK_HEADER);
+            }
+            putVarInt(block, length);
+            final int start = block.position();
+            codec.encode(item, block);
+            if (block.position() - start != length) {
+                throw new IllegalStateException("codec wrote "
+                    + (block.position() - start) + " bytes, expected "
+                    + length);
+            }
+            inBlock++;
+            written++;
+        }
+        if (written != count) {
+            throw new java.util.ConcurrentModificationException(
+                "expected " + count + " items, found " + written);
+        }
+        if (inBlock > 0) {
+            flushBlock(channel, block, inBlock, crc);
+        }
+    }
+
+    /**
+     * Read items from a channel into an empty queue.
+     *
+     * @param channel - source channel
+     * @param codec   - codec used to decode each item
+     * @param <T>     - generic item type
+     * @return - a queue holding the items in stream order
+     * @throws IOException - if the channel fails or the data is corrupt
+     */
+    public static <T> Queue<T> readQueue(final ReadableByteChannel channel,
+                                         final ElementCodec<T> codec)
+        throws IOException {
+        final Queue<T> queue = new Queue<T>();
+        read(channel, codec, new Sink<T>() {
+            void add(final T item) {
+                queue.enqueue(item);
+            }
+        });
+        return queue;
+    }
+
+    /**
+     * Read items from a channel into an empty deque.
+     *
+     * @param channel - source channel
+     * @param codec   - codec used to decode each item
+     * @param <T>     - generic item type
+     * @return - a deque holding the items in stream order, front to end
+     * @throws IOException - if the channel fails or the data is corrupt
+     */
+    public static <T> Deque<T> readDeque(final ReadableByteChannel channel,
+                                         final ElementCodec<T> codec)
+        throws IOException {
+        final Deque<T> deque = new Deque<T>();
+        read(channel, codec, new Sink<T>() {
+            void add(final T item) {
+                deque.addLast(item);
+            }
+        });
+        return deque;
+    }
+
+    /**
+     * Decode a stream and pass each item to the sink.
+     *
+     * @param channel - source channel
+     * @param codec   - codec used to decode each item
+     * @param sink    - receives the items in stream order
+     * @throws IOException - if the channel fails or the data is corrupt
+     */
+    private static <T> void read(final ReadableByteChannel channel,
+                                 final ElementCodec<T> codec,
+                                 final Sink<T> sink) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer header = ByteBuffer.allocate(STREAM_HEADER);
+        readFully(channel, header);
+        header.flip();
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("not a serialized queue");
+        }
+        crc.update(header.array(), 0, STREAM_HEADER - 4);
+        if ((int) crc.getValue() != header.getInt(STREAM_HEADER - 4)) {
+            throw new IOException("stream header checksum mismatch");
+        }
+        header.position(4);
+        final int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported version " + version);
+        }
+        long remaining = header.getLong();
+        if (remaining < 0) {
+            throw new IOException("negative item count " + remaining);
+        }
+
+        final ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER);
+        ByteBuffer payload = ByteBuffer.allocate(BLOCK_SIZE);
+        while (remaining > 0) {
+            blockHeader.clear();
+            readFully(channel, blockHeader);
+            blockHeader.flip();
+            final int length = blockHeader.getInt();
+            final int items = blockHeader.getInt();
+            final int checksum = blockHeader.getInt();
+            crc.reset();
+            crc.update(blockHeader.array(), 0, BLOCK_HEADER - 4);
+            if ((int) crc.getValue() != blockHeader.getInt()) {
+                throw new IOException("block header checksum mismatch");
+            }
+            // Every item takes at least its one byte length, and only a
+            // block of one item may exceed BLOCK_SIZE.
+            if (items <= 0 || items > remaining || length < items
+                || length > (items == 1 ? MAX_BLOCK_SIZE : BLOCK_SIZE)) {
+                throw new IOException("corrupt block header");
+            }
+            if (length > payload.capacity()) {
+                payload = ByteBuffer.allocate(length);
+            }
+            payload.clear();
+            payload.limit(length);
+            readFully(channel, payload);
+            payload.flip();
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("block checksum mismatch");
+            }
+            for (int i = 0; i < items; i++) {
+                final int itemLength = getVarInt(payload);
+                if (itemLength > payload.remaining()) {
+                    throw new IOException("corrupt item length");
+                }
+                final int end = payload.position() + itemLength;
+                sink.add(codec.decode(payload, itemLength));
+                if (payload.position() != end) {
+                    throw new IOException("codec read "
+                        + (payload.position() - end + itemLength)
+                        + " bytes, expected " + itemLength);
+                }
+            }
+            if (payload.hasRemaining()) {
+                throw new IOException(payload.remaining()
+                    + " bytes after the last item of a block");
+            }
+            remaining -= items;
+        }
+    }
+
+    /**
+     * Fill in the block header, write the block and reset it for reuse.
+     *
+     * @param channel - destination channel
+     * @param block   - block with its payload after BLOCK_HEADER bytes
+     * @param items   - number of items in the payload
+     * @param crc     - checksum instance to reuse
+     * @throws IOException - if the channel fails
+     */
+    private static void flushBlock(final WritableByteChannel channel,
+                                   final ByteBuffer block, final int items,
+                                   final CRC32 crc) throws IOException {
+        final int length = block.position() - BLOCK_HEADER;
+        crc.reset();
+        crc.update(block.array(), BLOCK_HEADER, length);
+        block.putInt(0, length);
+        block.putInt(4, items);
+        block.putInt(8, (int) crc.getValue());
+        crc.reset();
+        crc.update(block.array(), 0, BLOCK_HEADER - 4);
+        block.putInt(12, (int) crc.getValue());
+        block.flip();
+        writeFully(channel, block);
+        block.clear();
+        block.position(BLOCK_HEADER);
+    }
+
+    /**
+     * Write every remaining byte of the buffer.
+     *
+     * @param channel - destination channel
+     * @param buffer  - bytes to write
+     * @throws IOException - if the channel fails
+     */
+    private static void writeFully(final WritableByteChannel channel,
+                                   final ByteBuffer buffer)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Read until the buffer is full.
+     *
+     * @param channel - source channel
+     * @param buffer  - buffer to fill up to its limit
+     * @throws IOException - if the channel fails or ends first
+     */
+    private static void readFully(final ReadableByteChannel channel,
+                                  final ByteBuffer buffer)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("serialized queue truncated");
+            }
+        }
+    }
+
+    /**
+     * Number of bytes an unsigned varint takes.
+     *
+     * @param value - non-negative value
+     * @return - int between 1 and 5
+     */
+    private static int varIntSize(final int value) {
+        int size = 1;
+        int v = value >>> 7;
+        while (v != 0) {
+            size++;
+            v >>>= 7;
+        }
+        return size;
+    }
+
+    /**
+     * Write an unsigned varint, seven bits per byte, low bits first.
+     *
+     * @param buffer - destination
+     * @param value  - non-negative value
+     */
+    private static void putVarInt(final ByteBuffer buffer, final int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    /**
+     * Read an unsigned varint.
+     *
+     * @param buffer - source
+     * @return - the decoded value
+     * @throws IOException - if the varint is malformed
+     */
+    private static int getVarInt(final ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("corrupt item length");
+            }
+            final int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("corrupt item length");
+                }
+                return value;
+            }
+        }
+        throw new IOException("corrupt item length");
+    }
+
+    /**
+     * Private static helper that receives decoded items.
+     *
+     * @param <T> - generic item type
+     */
+    private abstract static class Sink<T> {
+
+        /**
+         * Accept the next decoded item.
+         *
+         * @param item - the item
+         */
+        abstract void add(T item);
+    }
+}
@@ -0,0 +1,230 @@
+
+import java.util.concurrent.Flow;
+
+/**
+ * <p>
+ * This class implements a {@link Flow.Subscriber} that feeds a bounded
+ * {@link Queue}. It requests as many items as the queue can hold when it
+ * subscribes, and asks for more only after the consumer has taken items out
+ * with {@link #poll()} or {@link #take()}: once half the capacity has been
+ * consumed, that many items are requested again in one call. Upstream
+ * therefore never sends more than fits, and the consumer never polls
+ * upstream.
+ * </p>
+ * <p/>
+ * <p>
+ * A publisher that sends more than was requested violates the Flow
+ * contract; the subscription is then cancelled and {@link #error()} reports
+ * an IllegalStateException.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class QueueSubscriber<T> implements Flow.Subscriber<T> {
+
+    /**
+     * Received items not yet consumed; also the monitor for all state.
+     */
+    private final Queue<T> queue;
+
+    /**
+     * Maximum number of items held.
+     */
+    private final int capacity;
+
+    /**
+     * Number of consumed items after which demand is replenished.
+     */
+    private final int replenish;
+
+    /**
+     * Items consumed since demand was last replenished.
+     */
+    private int consumed;
+
+    /**
+     * The subscription, once onSubscribe has been called.
+     */
+    private Flow.Subscription subscription;
+
+    /**
+     * Set by onComplete or onError.
+     */
+    private boolean done;
+
+    /**
+     * Failure passed to onError, if any.
+     */
+    private Throwable error;
+
+    /**
+     * Construct a subscriber holding at most capacity items.
+     *
+     * @param c - maximum number of buffered items, at least 1
+     */
+    public QueueSubscriber(final int c) {
+        if (c < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1: " + c);
+        }
+        capacity = c;
+        replenish = Math.max(1, c / 2);
+        queue = new Queue<T>(c);
+    }
+
+    /**
+     * Store the subscription and request a full buffer.
+     *
+     * @param s - the subscription
+     */
+    public final void onSubscribe(final Flow.Subscription s) {
+        synchronized (queue) {
+            if (subscription != null) {
+                s.cancel();
+                return;
+            }
+            subscription = s;
+        }
+        s.request(capacity);
+    }
+
+    /**
+     * Buffer an item and wake a waiting consumer.
+     *
+     * @param item - the item
+     */
+    public final void onNext(final T item) {
+        Flow.Subscription cancel = null;
+        synchronized (queue) {
+            if (done) {
+                return;
+            }
+            if (queue.size() == capacity) {
+                done = true;
+                error = new IllegalStateException(
+                    "publisher sent more items than requested");
+                cancel = subscription;
+            } else {
+                queue.enqueue(item);
+            }
+            queue.notifyAll();
+        }
+        if (cancel != null) {
+            cancel.cancel();
+        }
+    }
+
+    /**
+     * Record the failure and wake a waiting consumer.
+     *
+     * @param t - the failure
+     */
+    public final void onError(final Throwable t) {
+        synchronized (queue) {
+            if (!done) {
+                done = true;
+                error = t;
+            }
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * Record completion and wake a waiting consumer.
+     */
+    public final void onComplete() {
+        synchronized (queue) {
+            done = true;
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * Remove the next item, or return null if none is buffered.
+     *
+     * @return - the next item, or null
+     */
+    public final T poll() {
+        final T item;
+        final long more;
+        synchronized (queue) {
+            if (queue.isEmpty()) {
+                return null;
+            }
+            item = queue.dequeue();
+            more = consumed();
+        }
+        request(more);
+        return item;
+    }
+
+    /**
+     * Remove the next item, waiting for one if necessary.
+     *
+     * @return - the next item, or null once the stream has ended and every
+     * item has been taken
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public final T take() throws InterruptedException {
+        final T item;
+        final long more;
+        synchronized (queue) {
+            while (queue.isEmpty()) {
+                if (done) {
+                    return null;
+                }
+                queue.wait();
+            }
+            item = queue.dequeue();
+            more = consumed();
+        }
+        request(more);
+        return item;
+    }
+
+    /**
+     * Has the stream ended and every item been taken?
+     *
+     * @return - true if no more items will be returned
+     */
+    public final boolean isDrained() {
+        synchronized (queue) {
+            return done && queue.isEmpty();
+        }
+    }
+
+    /**
+     * The failure that ended the stream, if any.
+     *
+     * @return - the error, or null if none
+     */
+    public final Throwable error() {
+        synchronized (queue) {
+            return error;
+        }
+    }
+
+    /**
+     * Count one consumed item; called holding the monitor.
+     *
+     * @return - number of items to request now, possibly 0
+     */
+    private long consumed() {
+        if (++consumed < replenish || done) {
+            return 0;
+        }
+        final long more = consumed;
+        consumed = 0;
+        return more;
+    }
+
+    /**
+     * Request more items outside the monitor.
+     *
+     * @param n - number of items, or 0 for none
+     */
+    private void request(final long n) {
+        if (n > 0) {
+            subscription.request(n);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 
 import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * <p>
@@ -55,6 +57,23 @@ import java.util.Iterator;
  * two or more iterators to the same randomized queue should be
  * mutually independent; each iterator must maintain its own random order.
  * </p>
+ * <p/>
+ * <p>
+ * The bulk queries <em>contains</em> and <em>count</em> and the bulk
+ * removal <em>removeIf</em> work directly on the backing array, scanning
+ * the occupied part of the ring as at most two contiguous runs, and take
+ * time linear in the number of items without copying or shuffling them;
+ * <em>removeIf</em> marks the items to remove in a bit set, one bit per
+ * item, before compacting.
+ * </p>
+ * <p/>
+ * <p>
+ * <em>shuffleInPlace</em> permutes the backing array uniformly at random,
+ * and <em>drain</em> hands every item to a consumer in that order. Queues of
+ * at least {@link ParallelShuffle#SEQUENTIAL_THRESHOLD} items, including the
+ * copies made by iterators, are shuffled by {@link ParallelShuffle} on all
+ * cores.
+ * </p>
  *
  * @param <T> - generic item that will be  referenced in caller/client code.
  */
@@ -87,10 +106,10 @@ public class RandomizedQueue<T> implements Iterable<T> {
          */
         public RandomizedQueueIterator() {
             shuffled = (T[]) new Object[size];
-            for (int i = head % queue.length; i < size; i++) {
-                shuffled[i - (head % queue.length)] = queue[i];
+            for (int i = 0; i < size; i++) {
+                shuffled[i] = queue[(head + i) % queue.length];
             }
-            StdRandom.shuffle(shuffled);
+            shuffle(shuffled, size);
         }
 
         /**
@@ -238,7 +257,7 @@ public class RandomizedQueue<T> implements Iterable<T> {
         }
         queue = copy;
         head = 0;
-        tail = size;
+        tail = size % capacity;
     }
 
     /**
@@ -253,6 +272,184 @@ public class RandomizedQueue<T> implements Iterable<T> {
         return queue[(StdRandom.uniform(size) + head) % queue.length];
     }
 
+    /**
+     * Is an item equal to the given one in the queue?
+     *
+     * @param o - object to look for
+     * @return boolean - true if some item equals o
+     */
+    public final boolean contains(final Object o) {
+        if (o == null) {
+            return false;
+        }
+        final int end = Math.min(head + size, queue.length);
+        for (int i = head; i < end; i++) {
+            if (o.equals(queue[i])) {
+                return true;
+            }
+        }
+        final int wrapped = size - (end - head);
+        for (int i = 0; i < wrapped; i++) {
+            if (o.equals(queue[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the items that match a predicate.
+     *
+     * @param filter - predicate to test each item with
+     * @return int - the number of matching items
+     */
+    public final int count(final Predicate<? super T> filter) {
+        int count = 0;
+        final int end = Math.min(head + size, queue.length);
+        for (int i = head; i < end; i++) {
+            if (filter.test(queue[i])) {
+                count++;
+            }
+        }
+        final int wrapped = size - (end - head);
+        for (int i = 0; i < wrapped; i++) {
+            if (filter.test(queue[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove every item that matches a predicate. Every item is tested
+     * before any is moved, so a predicate that throws leaves the queue
+     * unchanged; the survivors are then compacted towards head in a single
+     * pass, and the array is shrunk to the smallest power of two that is at
+     * least twice the new size, so that dequeue keeps shrinking it after.
+     *
+     * @param filter - predicate selecting the items to remove
+     * @return int - the number of removed items
+     */
+    public final int removeIf(final Predicate<? super T> filter) {
+        if (filter == null) {
+            throw new NullPointerException();
+        }
+        // Bit i is set if the item i places after head is to be removed.
+        final long[] doomed = new long[(size + 63) >>> 6];
+        final int end = Math.min(head + size, queue.length);
+        final int wrapped = size - (end - head);
+        int removed = 0;
+        for (int i = head; i < end; i++) {
+            if (filter.test(queue[i])) {
+                doomed[(i - head) >>> 6] |= 1L << (i - head);
+                removed++;
+            }
+        }
+        for (int i = 0; i < wrapped; i++) {
+            if (filter.test(queue[i])) {
+                final int k = end - head + i;
+                doomed[k >>> 6] |= 1L << k;
+                removed++;
+            }
+        }
+        if (removed == 0) {
+            return 0;
+        }
+        int write = head;
+        for (int k = 0; k < size; k++) {
+            if ((doomed[k >>> 6] & (1L << k)) == 0) {
+                queue[write] = queue[(head + k) % queue.length];
+                write++;
+                if (write == queue.length) {
+                    write = 0;
+                }
+            }
+        }
+        for (int i = 0; i < removed; i++) {
+            queue[(write + i) % queue.length] = null;
+        }
+        size -= removed;
+        tail = write;
+        if (size == 0) {
+            clear();
+        } else if (size <= queue.length / REDUCTION_THRESHOLD) {
+            resize(Integer.highestOneBit(2 * size - 1) << 1);
+        }
+        return removed;
+    }
+
+    /**
+     * Permute the items uniformly at random in the backing array, so that
+     * they leave by drain in random order.
+     */
+    public final void shuffleInPlace() {
+        if (head + size > queue.length) {
+            resize(queue.length);
+        }
+        if (head > 0) {
+            System.arraycopy(queue, head, queue, 0, size);
+            java.util.Arrays.fill(queue, size, head + size, null);
+            head = 0;
+            tail = size % queue.length;
+        }
+        shuffle(queue, size);
+    }
+
+    /**
+     * Remove every item, handing them to a consumer in uniformly random
+     * order, and leave the queue empty. Each item is removed just before it
+     * is handed over, so if the consumer throws, the items it has not
+     * received are still in the queue.
+     *
+     * @param sink - receives each item once
+     */
+    public final void drain(final Consumer<? super T> sink) {
+        if (sink == null) {
+            throw new NullPointerException();
+        }
+        shuffleInPlace();
+        for (int n = size; n > 0; n--) {
+            final T item = queue[head];
+            queue[head] = null;
+            size--;
+            head++;
+            if (head == queue.length) {
+                head = 0;
+            }
+            sink.accept(item);
+        }
+        if (size == 0) {
+            clear();
+        }
+    }
+
+    /**
+     * Remove every item.
+     */
+    @SuppressWarnings("unchecked")
+    private void clear() {
+        queue = (T[]) new Object[2];
+        head = 0;
+        tail = 0;
+        size = 0;
+    }
+
+    /**
+     * Shuffle the first n positions of an array, on all cores if there are
+     * enough of them.
+     *
+     * @param a - the array
+     * @param n - number of positions
+     */
+    private static void shuffle(final Object[] a, final int n) {
+        if (n < ParallelShuffle.SEQUENTIAL_THRESHOLD && n == a.length) {
+            StdRandom.shuffle(a);
+        } else {
+            ParallelShuffle.shuffle(a, 0, n,
+                (long) (StdRandom.uniform() * (1L << 53)));
+        }
+    }
+
     /**
      * Method that acts as getter for size of queue.
      *
@@ -262,4 +459,31 @@ public class RandomizedQueue<T> implements Iterable<T> {
         return size;
     }
 
+    /**
+     * Convenience main method for CLI/IDE testing.
+     *
+     * @param args  - String array containing program arguments.
+     *              [Not implemented]
+     */
+    public static void main(final String... args) {
+        // Fill a ring of length 2 so that it wraps, then shuffle it in
+        // place: tail must stay a valid index for the next enqueue.
+        RandomizedQueue<String> queue = new RandomizedQueue<String>();
+        queue.enqueue("Three blind mice. ");
+        queue.enqueue("See how they run. ");
+        queue.dequeue();
+        queue.enqueue("They all ran after the farmer's wife. ");
+        queue.shuffleInPlace();
+        queue.dequeue();
+        queue.enqueue("As three blind mice? ");
+        int queueSize = queue.size();
+        System.out.println("queueSize() = " + queueSize);
+        queue.drain(new Consumer<String>() {
+            public void accept(final String next) {
+                System.out.println(next);
+            }
+        });
+        System.out.println("isEmpty() = " + queue.isEmpty());
+    }
+
 }
@@ -0,0 +1,168 @@
+
+/**
+ * <p>
+ * This class implements a fixed-capacity streaming shuffle buffer. While it
+ * fills, {@link #swapIn(Object)} just stores items; once it is full, each
+ * call stores the new item in a uniformly random slot and returns the item
+ * that was there. At the end of the stream {@link #drain()} returns the
+ * remaining items in uniformly random order.
+ * </p>
+ * <p/>
+ * <p>
+ * Used in place of a {@link RandomizedQueue} with a dequeue/enqueue pair per
+ * record, it does one random draw and one array write per record, never
+ * resizes and allocates nothing after construction. Every operation takes
+ * constant worst-case time.
+ * </p>
+ * <p/>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null item;
+ * throw a java.util.NoSuchElementException if the client attempts to drain
+ * an empty buffer.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class ShuffleBuffer<T> {
+
+    /**
+     * The buffered items, in slots 0 to size - 1.
+     */
+    private final T[] buffer;
+
+    /**
+     * Number of buffered items.
+     */
+    private int size;
+
+    /**
+     * Construct an empty buffer.
+     *
+     * @param capacity - number of items held once full, at least 1
+     */
+    @SuppressWarnings("unchecked")
+    public ShuffleBuffer(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                "capacity must be >= 1: " + capacity);
+        }
+        buffer = (T[]) new Object[capacity];
+    }
+
+    /**
+     * Add an item and, once the buffer is full, evict a random one.
+     *
+     * @param item - generic object
+     * @return - the evicted item, or null while the buffer is filling
+     */
+    public final T swapIn(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (size < buffer.length) {
+            buffer[size++] = item;
+            return null;
+        }
+        final int i = StdRandom.uniform(buffer.length);
+        final T evicted = buffer[i];
+        buffer[i] = item;
+        return evicted;
+    }
+
+    /**
+     * Add a run of items, writing the evicted items to out in order.
+     *
+     * @param items     - source array
+     * @param offset    - index of the first item to add
+     * @param length    - number of items to add
+     * @param out       - destination for evicted items, with room for
+     *                  length items from outOffset
+     * @param outOffset - index of the first evicted item in out
+     * @return - the number of items written to out
+     */
+    public final int swapIn(final T[] items, final int offset,
+                            final int length, final T[] out,
+                            final int outOffset) {
+        int written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final T evicted = swapIn(items[i]);
+            if (evicted != null) {
+                out[outOffset + written++] = evicted;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Remove and return a random item; used to empty the buffer at the end
+     * of the stream.
+     *
+     * @return - a uniformly random remaining item
+     */
+    public final T drain() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        final int i = StdRandom.uniform(size);
+        final T item = buffer[i];
+        buffer[i] = buffer[--size];
+        buffer[size] = null;
+        return item;
+    }
+
+    /**
+     * Is the buffer empty?
+     *
+     * @return boolean that reflects whether the buffer is empty or not.
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Has the buffer filled, so that every swapIn evicts an item?
+     *
+     * @return boolean that reflects whether the buffer is full or not.
+     */
+    public final boolean isFull() {
+        return size == buffer.length;
+    }
+
+    /**
+     * Method that acts as getter for the number of buffered items.
+     *
+     * @return int - the number of items in the buffer
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Method that acts as getter for the fixed capacity.
+     *
+     * @return int - the number of items held once full
+     */
+    public final int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Convenience main method for CLI/IDE testing: shuffles standard input
+     * through a buffer of the given size.
+     *
+     * @param args - String array whose first element is the buffer capacity
+     */
+    public static void main(final String[] args) {
+        final ShuffleBuffer<String> shuffler =
+            new ShuffleBuffer<String>(Integer.parseInt(args[0]));
+        while (!StdIn.isEmpty()) {
+            final String evicted = shuffler.swapIn(StdIn.readString());
+            if (evicted != null) {
+                StdOut.println(evicted);
+            }
+        }
+        while (!shuffler.isEmpty()) {
+            StdOut.println(shuffler.drain());
+        }
+    }
+}
@@ -0,0 +1,412 @@
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * This class implements a randomized queue partitioned into strata by a key,
+ * such as the service that produced a log record. Each stratum is its own
+ * randomized queue, so {@link #sample(Object)} draws uniformly from one key's
+ * items, and {@link #sampleUniformAcrossStrata()} first picks a non-empty
+ * stratum uniformly and then an item within it, so a busy key is no more
+ * likely to be drawn than a quiet one.
+ * </p>
+ * <p/>
+ * <p>
+ * A stratum may be given a quota. Once a stratum holds its quota, each
+ * further item replaces a random held item with the probability that keeps
+ * the stratum a uniform random sample of its reservoir (reservoir sampling),
+ * so a flood under one key neither grows memory nor biases the sample
+ * towards its most recent items. Until the stratum is first dequeued from,
+ * the reservoir is everything enqueued under its key. A dequeue consumes
+ * part of the sample, and raising the quota above the number of items held
+ * makes room the discarded items can no longer fill, so either restarts the
+ * reservoir from the items still held: they, and everything enqueued after
+ * them, are then sampled with equal probability.
+ * </p>
+ * <p/>
+ * <p>
+ * Key lookup is one hash lookup. Within a stratum the items occupy the front
+ * of an array in no particular order, and a removal moves the last item into
+ * the freed slot; the non-empty strata are kept the same way. Every operation
+ * therefore takes constant expected amortized time. Strata stay registered,
+ * with their quota and enqueue count, after they become empty.
+ * </p>
+ * <p/>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null item or
+ * key; throw a java.util.NoSuchElementException if the client attempts to
+ * sample or dequeue from an empty stratum or queue.
+ * </p>
+ *
+ * @param <K> - stratum key type.
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class StratifiedRandomizedQueue<K, T> {
+
+    /**
+     * Threshold for call to reduction strategy.
+     */
+    private static final int REDUCTION_THRESHOLD = 4;
+
+    /**
+     * Quota of strata that have not been given one.
+     */
+    private final int defaultQuota;
+
+    /**
+     * Every stratum, by key.
+     */
+    private final Map<K, Stratum<K, T>> strata =
+        new HashMap<K, Stratum<K, T>>();
+
+    /**
+     * The non-empty strata, in positions 0 to activeCount - 1.
+     */
+    @SuppressWarnings("unchecked")
+    private Stratum<K, T>[] active = (Stratum<K, T>[]) new Stratum<?, ?>[4];
+
+    /**
+     * Number of non-empty strata.
+     */
+    private int activeCount;
+
+    /**
+     * Total number of items.
+     */
+    private int size;
+
+    /**
+     * Construct an empty queue whose strata have no quota.
+     */
+    public StratifiedRandomizedQueue() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Construct an empty queue.
+     *
+     * @param q - quota of each stratum not given one by setQuota
+     */
+    public StratifiedRandomizedQueue(final int q) {
+        if (q < 1) {
+            throw new IllegalArgumentException("quota must be >= 1: " + q);
+        }
+        defaultQuota = q;
+    }
+
+    /**
+     * Set the maximum number of items held for a key. If the stratum holds
+     * more, randomly chosen items are discarded, which leaves a uniform
+     * sample. If it holds fewer, its reservoir restarts from the items held,
+     * since the items that were not kept cannot be offered the new room.
+     *
+     * @param key   - the stratum key
+     * @param quota - at least 1; Integer.MAX_VALUE for no quota
+     */
+    public final void setQuota(final K key, final int quota) {
+        if (quota < 1) {
+            throw new IllegalArgumentException("quota must be >= 1: " + quota);
+        }
+        final Stratum<K, T> s = stratum(key);
+        s.quota = quota;
+        while (s.size > quota) {
+            remove(s, StdRandom.uniform(s.size));
+        }
+        if (s.size < quota) {
+            s.pool = s.size;
+        }
+    }
+
+    /**
+     * Add an item under a key.
+     *
+     * @param key  - the stratum key
+     * @param item - generic object
+     * @return - false if the stratum is at its quota and the item was not
+     * sampled into it
+     */
+    public final boolean enqueue(final K key, final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        final Stratum<K, T> s = stratum(key);
+        s.seen++;
+        s.pool++;
+        if (s.size < s.quota) {
+            if (s.size == 0) {
+                activate(s);
+            }
+            s.add(item);
+            size++;
+            return true;
+        }
+        // Keep each item of the reservoir with probability quota / pool.
+        final long j = (long) (StdRandom.uniform() * s.pool);
+        if (j >= s.quota) {
+            return false;
+        }
+        s.items[(int) j] = item;
+        return true;
+    }
+
+    /**
+     * Return (but do not delete) a random item of a key.
+     *
+     * @param key - the stratum key
+     * @return - an item chosen uniformly from the stratum
+     */
+    public final T sample(final K key) {
+        final Stratum<K, T> s = nonEmpty(key);
+        return s.items[StdRandom.uniform(s.size)];
+    }
+
+    /**
+     * Delete and return a random item of a key.
+     *
+     * @param key - the stratum key
+     * @return - an item chosen uniformly from the stratum
+     */
+    public final T dequeue(final K key) {
+        return take(nonEmpty(key));
+    }
+
+    /**
+     * Return (but do not delete) an item from a uniformly chosen non-empty
+     * stratum.
+     *
+     * @return - an item chosen uniformly from a uniformly chosen stratum
+     */
+    public final T sampleUniformAcrossStrata() {
+        final Stratum<K, T> s = randomStratum();
+        return s.items[StdRandom.uniform(s.size)];
+    }
+
+    /**
+     * Delete and return an item from a uniformly chosen non-empty stratum.
+     *
+     * @return - an item chosen uniformly from a uniformly chosen stratum
+     */
+    public final T dequeueUniformAcrossStrata() {
+        return take(randomStratum());
+    }
+
+    /**
+     * Is the queue empty?
+     *
+     * @return boolean that reflects whether the queue is empty or not.
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Method that acts as getter for size of queue.
+     *
+     * @return int - the number of items in all strata
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Number of items held for a key.
+     *
+     * @param key - the stratum key
+     * @return int - the stratum's size, 0 if the key is unknown
+     */
+    public final int size(final K key) {
+        final Stratum<K, T> s = strata.get(key);
+        return s == null ? 0 : s.size;
+    }
+
+    /**
+     * Number of items ever enqueued under a key, kept or not.
+     *
+     * @param key - the stratum key
+     * @return long - the stratum's enqueue count, 0 if the key is unknown
+     */
+    public final long seen(final K key) {
+        final Stratum<K, T> s = strata.get(key);
+        return s == null ? 0 : s.seen;
+    }
+
+    /**
+     * Number of strata holding at least one item.
+     *
+     * @return int - the number of non-empty strata
+     */
+    public final int strataCount() {
+        return activeCount;
+    }
+
+    /**
+     * Look up a stratum, creating it with the default quota if needed.
+     *
+     * @param key - the stratum key
+     * @return - the stratum
+     */
+    private Stratum<K, T> stratum(final K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Stratum<K, T> s = strata.get(key);
+        if (s == null) {
+            s = new Stratum<K, T>(defaultQuota);
+            strata.put(key, s);
+        }
+        return s;
+    }
+
+    /**
+     * Look up a stratum that must hold items.
+     *
+     * @param key - the stratum key
+     * @return - the stratum
+     */
+    private Stratum<K, T> nonEmpty(final K key) {
+        final Stratum<K, T> s = strata.get(key);
+        if (s == null || s.size == 0) {
+            throw new NoSuchElementException("no items for key " + key);
+        }
+        return s;
+    }
+
+    /**
+     * Pick a non-empty stratum uniformly.
+     *
+     * @return - the stratum
+     */
+    private Stratum<K, T> randomStratum() {
+        if (activeCount == 0) {
+            throw new NoSuchElementException();
+        }
+        return active[StdRandom.uniform(activeCount)];
+    }
+
+    /**
+     * Dequeue a random item of a stratum and restart its reservoir from the
+     * items left.
+     *
+     * @param s - a non-empty stratum
+     * @return - an item chosen uniformly from the stratum
+     */
+    private T take(final Stratum<K, T> s) {
+        final T item = remove(s, StdRandom.uniform(s.size));
+        s.pool = s.size;
+        return item;
+    }
+
+    /**
+     * Remove the item at a position of a stratum, deactivating the stratum
+     * if it becomes empty.
+     *
+     * @param s - the stratum
+     * @param i - position of the item
+     * @return - the item
+     */
+    private T remove(final Stratum<K, T> s, final int i) {
+        final T item = s.remove(i);
+        size--;
+        if (s.size == 0) {
+            final Stratum<K, T> last = active[--activeCount];
+            active[s.slot] = last;
+            last.slot = s.slot;
+            active[activeCount] = null;
+            s.slot = -1;
+        }
+        return item;
+    }
+
+    /**
+     * Add a stratum to the non-empty strata.
+     *
+     * @param s - a stratum that is about to receive its first item
+     */
+    private void activate(final Stratum<K, T> s) {
+        if (activeCount == active.length) {
+            active = java.util.Arrays.copyOf(active, 2 * activeCount);
+        }
+        s.slot = activeCount;
+        active[activeCount++] = s;
+    }
+
+    /**
+     * Private static class holding one stratum's items.
+     *
+     * @param <K> - stratum key type
+     * @param <T> - generic item type
+     */
+    private static final class Stratum<K, T> {
+
+        /**
+         * The items, in positions 0 to size - 1.
+         */
+        private T[] items;
+
+        /**
+         * Number of items.
+         */
+        private int size;
+
+        /**
+         * Maximum number of items held.
+         */
+        private int quota;
+
+        /**
+         * Number of items ever enqueued.
+         */
+        private long seen;
+
+        /**
+         * Number of items in the reservoir the held items are sampled from.
+         */
+        private long pool;
+
+        /**
+         * Position in the active array, -1 while empty.
+         */
+        private int slot = -1;
+
+        /**
+         * Construct an empty stratum.
+         *
+         * @param q - quota
+         */
+        @SuppressWarnings("unchecked")
+        Stratum(final int q) {
+            quota = q;
+            items = (T[]) new Object[2];
+        }
+
+        /**
+         * Append an item; the stratum must be below its quota.
+         *
+         * @param item - the item
+         */
+        void add(final T item) {
+            if (size == items.length) {
+                items = java.util.Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = item;
+        }
+
+        /**
+         * Remove the item at a position, moving the last item into it.
+         *
+         * @param i - position of the item
+         * @return - the item
+         */
+        T remove(final int i) {
+            final T item = items[i];
+            items[i] = items[--size];
+            items[size] = null;
+            if (size > 0 && size == items.length / REDUCTION_THRESHOLD) {
+                items = java.util.Arrays.copyOf(items, items.length / 2);
+            }
+            return item;
+        }
+    }
+}
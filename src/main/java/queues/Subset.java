@@ -41,17 +41,33 @@ public final class Subset {
 
     /**
      * Convenience main method for CLI/IDE that implements the subset client.
+     * Tokens are stored in a {@link TokenArena} and the randomized queue
+     * holds their handles, so the whole input costs little more than its
+     * UTF-8 bytes; Strings are only created for the k tokens printed. Pass
+     * --strings after k to queue the Strings themselves instead.
      *
-     * @param args - String array containing program arguments.
-     *             [Not implemented]
+     * @param args - String array containing program arguments: k, then
+     *             optionally --strings.
      */
     public static void main(final String[] args) {
-        RandomizedQueue<String> str = new RandomizedQueue<String>();
+        final int k = Integer.parseInt(args[0]);
+        if (args.length > 1 && "--strings".equals(args[1])) {
+            RandomizedQueue<String> str = new RandomizedQueue<String>();
+            while (!StdIn.isEmpty()) {
+                str.enqueue(StdIn.readString());
+            }
+            for (int i = 0; i < k; i++) {
+                StdOut.println(str.dequeue());
+            }
+            return;
+        }
+        final TokenArena arena = new TokenArena();
+        final LongRandomizedQueue handles = new LongRandomizedQueue();
         while (!StdIn.isEmpty()) {
-            str.enqueue(StdIn.readString());
+            handles.enqueue(arena.add(StdIn.readString()));
         }
-        for (int i = 0; i < Integer.parseInt(args[0]); i++) {
-            StdOut.println(str.dequeue());
+        for (int i = 0; i < k; i++) {
+            StdOut.println(arena.get(handles.dequeue()));
         }
     }
 
@@ -0,0 +1,665 @@
+
+import java.util.Iterator;
+
+/**
+ * <p>
+ * This class implements a random-access double-ended queue (deque) as a
+ * tiered vector: a circular array of blocks, each block itself a circular
+ * array of B slots, with B kept near the square root of the size. Every
+ * block except the first and last is full, so the block and offset of any
+ * position follow from the first block's size by arithmetic alone.
+ * </p>
+ * <p/>
+ * <p>
+ * <em>get</em>, <em>set</em>, <em>size</em> and <em>is-empty</em> take
+ * constant worst-case time and the operations at both ends take constant
+ * amortized time. <em>add(i, x)</em> and <em>remove(i)</em> shift items
+ * within one block and then move a single item between each pair of
+ * blocks on the way to the nearer end, taking O(sqrt n) time. When the
+ * size outgrows B the deque is rebuilt with B doubled or halved, which is
+ * amortized over the operations that changed the size.
+ * </p>
+ * <p/>
+ * <p>
+ * Throw a NullPointerException if the client attempts to add a null item;
+ * throw a java.util.NoSuchElementException if the client attempts to remove
+ * an item from an empty deque; throw an IndexOutOfBoundsException for a
+ * position outside the deque.
+ * </p>
+ *
+ * @param <T> - generic item that will be  referenced in caller/client code.
+ */
+public class TieredDeque<T> implements Iterable<T>, DequeIF<T> {
+
+    /**
+     * log2 of the smallest block size.
+     */
+    private static final int MIN_SHIFT = 4;
+
+    /**
+     * The blocks, a circular array whose length is a power of two.
+     */
+    private Block<T>[] blocks;
+
+    /**
+     * Index in blocks of the first block.
+     */
+    private int firstBlock;
+
+    /**
+     * Number of blocks in use; none of them is empty.
+     */
+    private int blockCount;
+
+    /**
+     * log2 of the block size B.
+     */
+    private int shift;
+
+    /**
+     * Number of items.
+     */
+    private int size;
+
+    /**
+     * Construct an empty deque.
+     */
+    public TieredDeque() {
+        shift = MIN_SHIFT;
+        blocks = newBlocks(4);
+    }
+
+    /**
+     * Is the deque empty?
+     *
+     * @return - boolean indicating whether the deque is or is not empty.
+     */
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the size of the deque.
+     *
+     * @return - return the number of items on the deque
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Return the item at a position.
+     *
+     * @param i - position, counting from 0 at the front
+     * @return - the item
+     */
+    public final T get(final int i) {
+        checkIndex(i, size);
+        final int f = block(0).count;
+        if (i < f) {
+            return block(0).get(i);
+        }
+        final int j = i - f;
+        return block(1 + (j >>> shift)).get(j & ((1 << shift) - 1));
+    }
+
+    /**
+     * Replace the item at a position.
+     *
+     * @param i    - position, counting from 0 at the front
+     * @param item - the new item
+     * @return - the item that was there
+     */
+    public final T set(final int i, final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        checkIndex(i, size);
+        final int f = block(0).count;
+        if (i < f) {
+            return block(0).set(i, item);
+        }
+        final int j = i - f;
+        return block(1 + (j >>> shift)).set(j & ((1 << shift) - 1), item);
+    }
+
+    /**
+     * Insert the item at the front.
+     *
+     * @param item - Generic implementation.
+     */
+    public final void addFirst(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (blockCount == 0 || block(0).count == blockSize()) {
+            prependBlock();
+        }
+        block(0).addFirst(item);
+        size++;
+        grown();
+    }
+
+    /**
+     * Insert the item at the end.
+     *
+     * @param item - Generic implementation.
+     */
+    public final void addLast(final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (blockCount == 0 || block(blockCount - 1).count == blockSize()) {
+            appendBlock();
+        }
+        block(blockCount - 1).addLast(item);
+        size++;
+        grown();
+    }
+
+    /**
+     * Insert the item at a position, moving later items back (or earlier
+     * items forward, whichever is fewer blocks away from an end).
+     *
+     * @param i    - position of the new item, between 0 and size
+     * @param item - Generic implementation.
+     */
+    public final void add(final int i, final T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        checkIndex(i, size + 1);
+        if (i == 0) {
+            addFirst(item);
+            return;
+        }
+        if (i == size) {
+            addLast(item);
+            return;
+        }
+        final int b = blockSize();
+        final int f = block(0).count;
+        int k = i < f ? 0 : 1 + ((i - f) >>> shift);
+        final int l = i < f ? i : (i - f) & (b - 1);
+        Block<T> target = block(k);
+        if (target.count < b) {
+            target.insert(l, item);
+        } else if (k < blockCount - 1 - k) {
+            if (block(0).count == b) {
+                prependBlock();
+                k++;
+            }
+            // Push the block's first item into the previous block, and so
+            // on until the first block, which has room.
+            T carry = target.removeFirst();
+            if (l == 0) {
+                final T swap = carry;
+                carry = item;
+                target.addFirst(swap);
+            } else {
+                target.insert(l - 1, item);
+            }
+            for (int j = k - 1; j > 0; j--) {
+                final Block<T> blk = block(j);
+                final T next = blk.removeFirst();
+                blk.addLast(carry);
+                carry = next;
+            }
+            block(0).addLast(carry);
+        } else {
+            if (block(blockCount - 1).count == b) {
+                appendBlock();
+            }
+            // Push the block's last item into the next block, and so on
+            // until the last block, which has room.
+            T carry = target.removeLast();
+            target.insert(l, item);
+            for (int j = k + 1; j < blockCount - 1; j++) {
+                final Block<T> blk = block(j);
+                final T next = blk.removeLast();
+                blk.addFirst(carry);
+                carry = next;
+            }
+            block(blockCount - 1).addFirst(carry);
+        }
+        size++;
+        grown();
+    }
+
+    /**
+     * Delete and return the item at the front.
+     *
+     * @return - the first generic type.
+     */
+    public final T removeFirst() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        final Block<T> first = block(0);
+        final T item = first.removeFirst();
+        if (first.count == 0) {
+            blocks[firstBlock] = null;
+            firstBlock = (firstBlock + 1) & (blocks.length - 1);
+            blockCount--;
+        }
+        size--;
+        shrunk();
+        return item;
+    }
+
+    /**
+     * Delete and return the item at the end.
+     *
+     * @return - the last generic type.
+     */
+    public final T removeLast() {
+        if (isEmpty()) {
+            throw new java.util.NoSuchElementException();
+        }
+        final Block<T> last = block(blockCount - 1);
+        final T item = last.removeLast();
+        if (last.count == 0) {
+            blocks[(firstBlock + blockCount - 1) & (blocks.length - 1)] =
+                null;
+            blockCount--;
+        }
+        size--;
+        shrunk();
+        return item;
+    }
+
+    /**
+     * Delete and return the item at a position, closing the gap from
+     * whichever end is fewer blocks away.
+     *
+     * @param i - position, counting from 0 at the front
+     * @return - the removed item
+     */
+    public final T remove(final int i) {
+        checkIndex(i, size);
+        if (i == 0) {
+            return removeFirst();
+        }
+        if (i == size - 1) {
+            return removeLast();
+        }
+        final int f = block(0).count;
+        final int k = i < f ? 0 : 1 + ((i - f) >>> shift);
+        final int l = i < f ? i : (i - f) & (blockSize() - 1);
+        final Block<T> target = block(k);
+        final T item = target.remove(l);
+        if (k == 0 || k == blockCount - 1) {
+            if (target.count == 0) {
+                dropEmptyEnd(k);
+            }
+        } else if (k < blockCount - 1 - k) {
+            // Refill from the previous block, and so on; the first block
+            // shrinks.
+            for (int j = k; j > 0; j--) {
+                block(j).addFirst(block(j - 1).removeLast());
+            }
+            if (block(0).count == 0) {
+                dropEmptyEnd(0);
+            }
+        } else {
+            for (int j = k; j < blockCount - 1; j++) {
+                block(j).addLast(block(j + 1).removeFirst());
+            }
+            if (block(blockCount - 1).count == 0) {
+                dropEmptyEnd(blockCount - 1);
+            }
+        }
+        size--;
+        shrunk();
+        return item;
+    }
+
+    /**
+     * Return an iterator over items in order from front to end.
+     *
+     * @return - new TieredDequeIterator
+     */
+    public final Iterator<T> iterator() {
+        return new TieredDequeIterator();
+    }
+
+    /**
+     * Private class to implement the tiered deque iterator.
+     */
+    private class TieredDequeIterator implements Iterator<T> {
+
+        /**
+         * Position of the next item.
+         */
+        private int current;
+
+        /**
+         * Method to determine whether there are more items.
+         *
+         * @return - boolean that reflects whether position is before the end.
+         */
+        public boolean hasNext() {
+            return current < size;
+        }
+
+        /**
+         * Method that returns the next item, if there is one. Otherwise,
+         * it will throw a {@link java.util.NoSuchElementException()}
+         *
+         * @return - The next item in the deque
+         */
+        public T next() {
+            if (!hasNext()) {
+                throw new java.util.NoSuchElementException();
+            }
+            return get(current++);
+        }
+
+        /**
+         * Do Not Call or you will get an UnsupportedOperationException.
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Current block size B.
+     *
+     * @return - 1 << shift
+     */
+    private int blockSize() {
+        return 1 << shift;
+    }
+
+    /**
+     * The k-th block from the front.
+     *
+     * @param k - block number
+     * @return - the block
+     */
+    private Block<T> block(final int k) {
+        return blocks[(firstBlock + k) & (blocks.length - 1)];
+    }
+
+    /**
+     * Add an empty block at the front.
+     */
+    private void prependBlock() {
+        ensureBlockRoom();
+        firstBlock = (firstBlock - 1) & (blocks.length - 1);
+        blocks[firstBlock] = new Block<T>(blockSize());
+        blockCount++;
+    }
+
+    /**
+     * Add an empty block at the end.
+     */
+    private void appendBlock() {
+        ensureBlockRoom();
+        blocks[(firstBlock + blockCount) & (blocks.length - 1)] =
+            new Block<T>(blockSize());
+        blockCount++;
+    }
+
+    /**
+     * Remove the empty first or last block.
+     *
+     * @param k - 0 or blockCount - 1
+     */
+    private void dropEmptyEnd(final int k) {
+        if (k == 0) {
+            blocks[firstBlock] = null;
+            firstBlock = (firstBlock + 1) & (blocks.length - 1);
+        } else {
+            blocks[(firstBlock + k) & (blocks.length - 1)] = null;
+        }
+        blockCount--;
+    }
+
+    /**
+     * Double the block array if it is full.
+     */
+    private void ensureBlockRoom() {
+        if (blockCount < blocks.length) {
+            return;
+        }
+        final Block<T>[] copy = newBlocks(blocks.length * 2);
+        for (int k = 0; k < blockCount; k++) {
+            copy[k] = block(k);
+        }
+        blocks = copy;
+        firstBlock = 0;
+    }
+
+    /**
+     * Rebuild with larger blocks once there are more than 4B of them.
+     */
+    private void grown() {
+        if (size > 4 << (2 * shift)) {
+            rebuild(shift + 1);
+        }
+    }
+
+    /**
+     * Rebuild with smaller blocks once there are fewer than B/16 of them.
+     */
+    private void shrunk() {
+        if (shift > MIN_SHIFT && size < 1 << (2 * shift - 4)) {
+            rebuild(shift - 1);
+        }
+    }
+
+    /**
+     * Repack every item into full blocks of a new size.
+     *
+     * @param newShift - log2 of the new block size
+     */
+    private void rebuild(final int newShift) {
+        final int b = 1 << newShift;
+        final int n = (size + b - 1) >>> newShift;
+        int capacity = 4;
+        while (capacity < n) {
+            capacity *= 2;
+        }
+        final Block<T>[] copy = newBlocks(capacity);
+        int k = -1;
+        for (int j = 0; j < blockCount; j++) {
+            final Block<T> old = block(j);
+            for (int l = 0; l < old.count; l++) {
+                if (k < 0 || copy[k].count == b) {
+                    copy[++k] = new Block<T>(b);
+                }
+                copy[k].addLast(old.get(l));
+            }
+        }
+        blocks = copy;
+        firstBlock = 0;
+        blockCount = k + 1;
+        shift = newShift;
+    }
+
+    /**
+     * Check a position against a bound.
+     *
+     * @param i     - position
+     * @param bound - exclusive upper bound
+     */
+    private static void checkIndex(final int i, final int bound) {
+        if (i < 0 || i >= bound) {
+            throw new IndexOutOfBoundsException(
+                "index " + i + ", bound " + bound);
+        }
+    }
+
+    /**
+     * Allocate a block array.
+     *
+     * @param n - length
+     * @return - an array of n null blocks
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Block<T>[] newBlocks(final int n) {
+        return (Block<T>[]) new Block<?>[n];
+    }
+
+    /**
+     * Private static class for one circular block of items.
+     *
+     * @param <T>
+     */
+    private static final class Block<T> {
+
+        /**
+         * Slots; the length is a power of two.
+         */
+        private final T[] items;
+
+        /**
+         * Index of the first item.
+         */
+        private int head;
+
+        /**
+         * Number of items.
+         */
+        private int count;
+
+        /**
+         * Construct an empty block.
+         *
+         * @param capacity - number of slots, a power of two
+         */
+        @SuppressWarnings("unchecked")
+        Block(final int capacity) {
+            items = (T[]) new Object[capacity];
+        }
+
+        /**
+         * Slot index of a local position.
+         *
+         * @param l - position within the block
+         * @return - index into items
+         */
+        private int slot(final int l) {
+            return (head + l) & (items.length - 1);
+        }
+
+        /**
+         * Item at a local position.
+         *
+         * @param l - position within the block
+         * @return - the item
+         */
+        T get(final int l) {
+            return items[slot(l)];
+        }
+
+        /**
+         * Replace the item at a local position.
+         *
+         * @param l    - position within the block
+         * @param item - the new item
+         * @return - the old item
+         */
+        T set(final int l, final T item) {
+            final int s = slot(l);
+            final T old = items[s];
+            items[s] = item;
+            return old;
+        }
+
+        /**
+         * Add at the front; the block must not be full.
+         *
+         * @param item - the item
+         */
+        void addFirst(final T item) {
+            head = (head - 1) & (items.length - 1);
+            items[head] = item;
+            count++;
+        }
+
+        /**
+         * Add at the end; the block must not be full.
+         *
+         * @param item - the item
+         */
+        void addLast(final T item) {
+            items[slot(count)] = item;
+            count++;
+        }
+
+        /**
+         * Remove from the front.
+         *
+         * @return - the first item
+         */
+        T removeFirst() {
+            final T item = items[head];
+            items[head] = null;
+            head = (head + 1) & (items.length - 1);
+            count--;
+            return item;
+        }
+
+        /**
+         * Remove from the end.
+         *
+         * @return - the last item
+         */
+        T removeLast() {
+            count--;
+            final int s = slot(count);
+            final T item = items[s];
+            items[s] = null;
+            return item;
+        }
+
+        /**
+         * Insert at a local position, shifting the shorter side; the block
+         * must not be full.
+         *
+         * @param l    - position, between 0 and count
+         * @param item - the item
+         */
+        void insert(final int l, final T item) {
+            if (l < count - l) {
+                head = (head - 1) & (items.length - 1);
+                for (int i = 0; i < l; i++) {
+                    items[slot(i)] = items[slot(i + 1)];
+                }
+            } else {
+                for (int i = count; i > l; i--) {
+                    items[slot(i)] = items[slot(i - 1)];
+                }
+            }
+            items[slot(l)] = item;
+            count++;
+        }
+
+        /**
+         * Remove at a local position, shifting the shorter side.
+         *
+         * @param l - position, between 0 and count - 1
+         * @return - the removed item
+         */
+        T remove(final int l) {
+            final T item = get(l);
+            if (l < count - 1 - l) {
+                for (int i = l; i > 0; i--) {
+                    items[slot(i)] = items[slot(i - 1)];
+                }
+                items[head] = null;
+                head = (head + 1) & (items.length - 1);
+            } else {
+                for (int i = l; i < count - 1; i++) {
+                    items[slot(i)] = items[slot(i + 1)];
+                }
+                items[slot(count - 1)] = null;
+            }
+            count--;
+            return item;
+        }
+    }
+}
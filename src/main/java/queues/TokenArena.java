@@ -0,0 +1,159 @@
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * This class stores strings as UTF-8 bytes appended to large byte arrays
+ * (arenas) and identifies each one by a packed {@code long} handle holding
+ * its arena, offset and length. A stored token costs its encoded bytes plus
+ * the eight-byte handle, instead of a String object, its backing array and
+ * their headers; a String is only created again by {@link #get(long)}.
+ * </p>
+ * <p/>
+ * <p>
+ * <em>add</em> takes time proportional to the token's length and never
+ * copies earlier tokens: when the current arena cannot fit a token, a new
+ * arena is started and the unused tail of the old one is wasted. Tokens are
+ * never removed. Tokens must encode to fewer than {@value #MAX_LENGTH}
+ * bytes.
+ * </p>
+ */
+public class TokenArena {
+
+    /**
+     * log2 of the arena size.
+     */
+    private static final int ARENA_BITS = 20;
+
+    /**
+     * Bits of a handle holding the token length.
+     */
+    private static final int LENGTH_BITS = 20;
+
+    /**
+     * Bytes per arena: 1 MiB.
+     */
+    private static final int ARENA_SIZE = 1 << ARENA_BITS;
+
+    /**
+     * Longest token that can be stored, in bytes, exclusive.
+     */
+    public static final int MAX_LENGTH = 1 << LENGTH_BITS;
+
+    /**
+     * The arenas; only the last one has free space.
+     */
+    private byte[][] arenas = new byte[4][];
+
+    /**
+     * Number of arenas allocated.
+     */
+    private int arenaCount;
+
+    /**
+     * Next free byte in the last arena.
+     */
+    private int position;
+
+    /**
+     * Number of tokens stored.
+     */
+    private int count;
+
+    /**
+     * Store a token.
+     *
+     * @param token - the token
+     * @return - handle to pass to {@link #get(long)}
+     */
+    public final long add(final String token) {
+        final int n = token.length();
+        boolean ascii = true;
+        for (int i = 0; i < n && ascii; i++) {
+            ascii = token.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            final byte[] arena = reserve(n);
+            final int offset = position;
+            for (int i = 0; i < n; i++) {
+                arena[offset + i] = (byte) token.charAt(i);
+            }
+            return commit(n);
+        }
+        final byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        final byte[] arena = reserve(bytes.length);
+        System.arraycopy(bytes, 0, arena, position, bytes.length);
+        return commit(bytes.length);
+    }
+
+    /**
+     * Decode a stored token.
+     *
+     * @param handle - handle returned by {@link #add(String)}
+     * @return - a new String equal to the stored token
+     */
+    public final String get(final long handle) {
+        final int length = (int) handle & (MAX_LENGTH - 1);
+        final int offset = (int) (handle >>> LENGTH_BITS) & (ARENA_SIZE - 1);
+        final int arena = (int) (handle >>> (LENGTH_BITS + ARENA_BITS));
+        return new String(arenas[arena], offset, length,
+            StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Number of tokens stored.
+     *
+     * @return int - the number of calls to add
+     */
+    public final int size() {
+        return count;
+    }
+
+    /**
+     * Bytes allocated for arenas, used or not.
+     *
+     * @return long - arena count times arena size
+     */
+    public final long allocatedBytes() {
+        return (long) arenaCount * ARENA_SIZE;
+    }
+
+    /**
+     * Make room for a token in the last arena, starting a new one if needed.
+     *
+     * @param length - encoded length of the token
+     * @return - the arena to write to, at position
+     */
+    private byte[] reserve(final int length) {
+        if (length >= MAX_LENGTH) {
+            throw new IllegalArgumentException(
+                "token of " + length + " bytes is too long");
+        }
+        // An arena with no room left cannot start even an empty token: its
+        // offset, ARENA_SIZE, would not fit in the handle.
+        if (arenaCount == 0 || position == ARENA_SIZE
+            || ARENA_SIZE - position < length) {
+            if (arenaCount == arenas.length) {
+                arenas = java.util.Arrays.copyOf(arenas, arenaCount * 2);
+            }
+            arenas[arenaCount++] = new byte[ARENA_SIZE];
+            position = 0;
+        }
+        return arenas[arenaCount - 1];
+    }
+
+    /**
+     * Account for a token written at position and build its handle.
+     *
+     * @param length - encoded length of the token
+     * @return - packed arena, offset and length
+     */
+    private long commit(final int length) {
+        assert position < ARENA_SIZE;
+        final long handle = ((long) (arenaCount - 1) << (LENGTH_BITS
+            + ARENA_BITS)) | ((long) position << LENGTH_BITS) | length;
+        position += length;
+        count++;
+        return handle;
+    }
+}
@@ -0,0 +1,496 @@
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * This class implements a small work-stealing executor whose per-worker task
+ * queues are instances of {@link Deque}. A task submitted from a worker
+ * thread is pushed on the tail of that worker's deque and the worker pops
+ * its own tasks from the tail (LIFO), keeping recently spawned work in
+ * cache. An idle worker steals from the head (FIFO) of a randomly chosen
+ * victim, which takes the oldest and usually largest pieces of work. Tasks
+ * submitted from other threads are placed on a randomly chosen worker's
+ * deque. Workers that find nothing to run park until new work arrives.
+ * </p>
+ * <p/>
+ * <p>
+ * Each deque is guarded by its own monitor, so submitters and thieves only
+ * contend with the one worker they touch, instead of on the single shared
+ * queue of a ThreadPoolExecutor. {@code submit} and {@code invokeAll} come
+ * from {@link AbstractExecutorService}. Tasks must not block waiting for
+ * other tasks in the same executor; workers do not run other tasks while
+ * blocked, so that can deadlock.
+ * </p>
+ */
+public class WorkStealingExecutor extends AbstractExecutorService {
+
+    /**
+     * Bit of ctl set once shutdown has been requested; the remaining bits
+     * count external submissions in progress.
+     */
+    private static final int SHUTDOWN = 1 << 30;
+
+    /**
+     * Removed deque nodes kept per worker for reuse.
+     */
+    private static final int RECYCLED_NODES = 256;
+
+    /**
+     * The workers.
+     */
+    private final Worker[] workers;
+
+    /**
+     * Shutdown bit plus the number of external submitters in progress.
+     */
+    private final AtomicInteger ctl = new AtomicInteger();
+
+    /**
+     * Number of workers that are parked or about to park.
+     */
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Set by shutdownNow; workers exit without draining their deques.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Counted down by each worker as it exits.
+     */
+    private final CountDownLatch terminated;
+
+    /**
+     * Construct an executor with one worker per available processor.
+     */
+    public WorkStealingExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Construct an executor with the given number of workers.
+     *
+     * @param parallelism - number of worker threads, at least 1
+     */
+    public WorkStealingExecutor(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(
+                "parallelism must be >= 1: " + parallelism);
+        }
+        workers = new Worker[parallelism];
+        terminated = new CountDownLatch(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = new Worker(i);
+        }
+        for (Worker w : workers) {
+            w.start();
+        }
+    }
+
+    /**
+     * Run the task on one of the workers.
+     *
+     * @param task - the task to run
+     */
+    public final void execute(final Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        final Thread current = Thread.currentThread();
+        if (current instanceof Worker && ((Worker) current).pool() == this
+            && !stopped) {
+            ((Worker) current).push(task);
+        } else {
+            int c;
+            do {
+                c = ctl.get();
+                if ((c & SHUTDOWN) != 0) {
+                    throw new RejectedExecutionException("executor shut down");
+                }
+            } while (!ctl.compareAndSet(c, c + 1));
+            try {
+                workers[ThreadLocalRandom.current().nextInt(workers.length)]
+                    .push(task);
+            } finally {
+                // Workers woken by shutdown() while this submission was in
+                // flight saw ctl != SHUTDOWN and parked again; the last
+                // submitter out wakes them all to re-check.
+                if (ctl.decrementAndGet() == SHUTDOWN) {
+                    unparkAll();
+                }
+            }
+        }
+        signalWork();
+    }
+
+    /**
+     * Unpark one idle worker, if there is one.
+     */
+    private void signalWork() {
+        if (idleCount.get() == 0) {
+            return;
+        }
+        for (Worker w : workers) {
+            if (w.idle.get() && w.idle.compareAndSet(true, false)) {
+                LockSupport.unpark(w);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take a task from the head of another worker's deque, starting at a
+     * random victim.
+     *
+     * @param thief - the worker looking for work
+     * @return - a stolen task, or null if every deque was empty
+     */
+    private Runnable steal(final Worker thief) {
+        final int n = workers.length;
+        final int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            final Worker victim = workers[(start + i) % n];
+            if (victim != thief) {
+                final Runnable task = victim.pollFirst();
+                if (task != null) {
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reject new tasks; tasks already submitted still run.
+     */
+    public final void shutdown() {
+        int c;
+        do {
+            c = ctl.get();
+        } while ((c & SHUTDOWN) == 0 && !ctl.compareAndSet(c, c | SHUTDOWN));
+        unparkAll();
+    }
+
+    /**
+     * Unpark every worker so that it re-checks whether to exit.
+     */
+    private void unparkAll() {
+        for (Worker w : workers) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * Reject new tasks, interrupt the workers and return the tasks that
+     * never started.
+     *
+     * @return - list of tasks that were queued but not run
+     */
+    public final List<Runnable> shutdownNow() {
+        shutdown();
+        stopped = true;
+        final List<Runnable> pending = new ArrayList<Runnable>();
+        for (Worker w : workers) {
+            Runnable task;
+            while ((task = w.pollFirst()) != null) {
+                pending.add(task);
+            }
+            w.interrupt();
+        }
+        return pending;
+    }
+
+    /**
+     * Has shutdown been requested?
+     *
+     * @return - true once shutdown or shutdownNow has been called
+     */
+    public final boolean isShutdown() {
+        return (ctl.get() & SHUTDOWN) != 0;
+    }
+
+    /**
+     * Have all workers exited after a shutdown?
+     *
+     * @return - true if every worker has exited
+     */
+    public final boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    /**
+     * Wait for all workers to exit after a shutdown.
+     *
+     * @param timeout - maximum time to wait
+     * @param unit    - unit of timeout
+     * @return - true if terminated, false if the timeout elapsed first
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public final boolean awaitTermination(final long timeout,
+                                          final TimeUnit unit)
+        throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Private class for a worker thread and its deque.
+     */
+    private final class Worker extends Thread {
+
+        /**
+         * This worker's tasks; guarded by its own monitor.
+         */
+        private final Deque<Runnable> tasks =
+            new Deque<Runnable>(RECYCLED_NODES);
+
+        /**
+         * Set while parked or about to park; cleared by whoever unparks.
+         */
+        private final AtomicBoolean idle = new AtomicBoolean();
+
+        /**
+         * Construct a worker.
+         *
+         * @param index - index used in the thread name
+         */
+        Worker(final int index) {
+            super("work-stealing-" + index);
+            setDaemon(true);
+        }
+
+        /**
+         * The executor that owns this worker.
+         *
+         * @return - the enclosing executor
+         */
+        WorkStealingExecutor pool() {
+            return WorkStealingExecutor.this;
+        }
+
+        /**
+         * Push a task on the tail.
+         *
+         * @param task - the task
+         */
+        void push(final Runnable task) {
+            synchronized (tasks) {
+                tasks.addLast(task);
+            }
+        }
+
+        /**
+         * Pop the most recently pushed task, owner side.
+         *
+         * @return - a task, or null if empty
+         */
+        Runnable pollLast() {
+            synchronized (tasks) {
+                return tasks.isEmpty() ? null : tasks.removeLast();
+            }
+        }
+
+        /**
+         * Take the oldest task, thief side.
+         *
+         * @return - a task, or null if empty
+         */
+        Runnable pollFirst() {
+            synchronized (tasks) {
+                return tasks.isEmpty() ? null : tasks.removeFirst();
+            }
+        }
+
+        /**
+         * Run local tasks, then stolen ones, parking when there are none.
+         */
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    Runnable task = pollLast();
+                    if (task == null) {
+                        task = steal(this);
+                    }
+                    if (task == null) {
+                        task = awaitWork();
+                        if (task == null) {
+                            return;
+                        }
+                    }
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        // Tasks from submit() capture their own failures;
+                        // a bare execute() task must not kill the worker.
+                        Thread.UncaughtExceptionHandler h =
+                            getUncaughtExceptionHandler();
+                        if (h != null) {
+                            h.uncaughtException(this, e);
+                        }
+                    }
+                    clearInterrupt();
+                }
+            } finally {
+                terminated.countDown();
+            }
+        }
+
+        /**
+         * Park until work is available. Advertising idleness before the
+         * final scan guarantees that a task pushed after the scan sees this
+         * worker as idle and unparks it.
+         *
+         * @return - a task to run, or null if the worker should exit
+         */
+        private Runnable awaitWork() {
+            idleCount.incrementAndGet();
+            try {
+                while (true) {
+                    clearInterrupt();
+                    idle.set(true);
+                    final boolean exiting = ctl.get() == SHUTDOWN;
+                    Runnable task = pollLast();
+                    if (task == null) {
+                        task = steal(this);
+                    }
+                    if (task != null || exiting || stopped) {
+                        idle.set(false);
+                        return task;
+                    }
+                    LockSupport.park(this);
+                    idle.set(false);
+                }
+            } finally {
+                idleCount.decrementAndGet();
+            }
+        }
+
+        /**
+         * Clear an interrupt left by a cancelled task, as ThreadPoolExecutor
+         * does, so that park does not return at once forever after. The
+         * interrupt from shutdownNow is kept: it follows setting stopped,
+         * which the caller checks next.
+         */
+        private void clearInterrupt() {
+            if (!stopped) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Benchmark: run a binary tree of tiny tasks, each spawning its children
+     * through the executor, and compare with a fixed ThreadPoolExecutor of
+     * the same size.
+     *
+     * @param args - optional tree depth (default 20) and rounds (default 5)
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final int depth = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ExecutorService stealing = new WorkStealingExecutor(threads);
+        final ExecutorService shared = Executors.newFixedThreadPool(threads);
+        final long tasks = (1L << (depth + 1)) - 1;
+        for (int r = 0; r < rounds; r++) {
+            final long ws = runTree(stealing, depth);
+            final long tp = runTree(shared, depth);
+            System.out.printf("round %d: %d tasks, work-stealing %.1f ms"
+                    + " (%.0f ns/task), ThreadPoolExecutor %.1f ms"
+                    + " (%.0f ns/task)%n", r, tasks, ws / 1e6,
+                (double) ws / tasks, tp / 1e6, (double) tp / tasks);
+        }
+        stealing.shutdown();
+        shared.shutdown();
+    }
+
+    /**
+     * Run one task tree and wait for it to finish.
+     *
+     * @param executor - executor to run on
+     * @param depth    - depth of the tree
+     * @return - elapsed nanoseconds
+     * @throws InterruptedException - if interrupted while waiting
+     */
+    private static long runTree(final ExecutorService executor,
+                                final int depth)
+        throws InterruptedException {
+        final AtomicLong pending = new AtomicLong(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        executor.execute(new TreeTask(executor, depth, pending, done));
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Private static benchmark task that spawns two children until depth 0.
+     */
+    private static final class TreeTask implements Runnable {
+
+        /**
+         * Executor the children are submitted to.
+         */
+        private final ExecutorService executor;
+
+        /**
+         * Remaining depth below this task.
+         */
+        private final int depth;
+
+        /**
+         * Number of tasks not yet finished.
+         */
+        private final AtomicLong pending;
+
+        /**
+         * Released when the last task finishes.
+         */
+        private final CountDownLatch done;
+
+        /**
+         * Construct a tree task.
+         *
+         * @param e - executor
+         * @param d - remaining depth
+         * @param p - pending counter
+         * @param l - completion latch
+         */
+        TreeTask(final ExecutorService e, final int d, final AtomicLong p,
+                 final CountDownLatch l) {
+            executor = e;
+            depth = d;
+            pending = p;
+            done = l;
+        }
+
+        /**
+         * Spawn the children, then retire this task.
+         */
+        public void run() {
+            if (depth > 0) {
+                pending.addAndGet(2);
+                executor.execute(new TreeTask(executor, depth - 1, pending,
+                    done));
+                executor.execute(new TreeTask(executor, depth - 1, pending,
+                    done));
+            }
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+}